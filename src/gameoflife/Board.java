@@ -1,20 +1,88 @@
 package gameoflife;
 
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Board class that contains a representation of a board for the Game of life, along with several useful methods for manipulating said board
- * 
+ *
+ * Cells are bit-packed 64 to a long, row-major, in a single flat array.  Bit i of word w in a row is the cell at x = w*64 + i.
+ * Any bits past xLength in the last word of a row are always kept at 0.
+ *
+ * The population and the births and deaths of each generation are counted from the words that change while
+ * stepping, and recorded in the board's metrics along with how long the step took.
+ *
+ * The board also keeps a Zobrist-style hash of its cells, the XOR of a hash of every word and its index, which is
+ * updated for just the words that change.  Two boards with the same cells always have the same hash, so repeats of
+ * an earlier generation can be spotted cheaply (see CycleDetector).
+ *
+ * Copies of a board share its cells until one of them changes, so copying even a huge board is instant.
+ *
  * @author Folz
  *
  */
-public class Board implements Serializable{
+public class Board implements LifeBoard{
+	//same id as the old boolean[][] board, so .life files saved before the packed storage still load
+	private static final long serialVersionUID = 9171783946306258645L;
+	//serialized form is still the old boolean[][] layout
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("xLength", int.class),
+		new ObjectStreamField("yLength", int.class),
+		new ObjectStreamField("board", boolean[][].class),
+		new ObjectStreamField("nextBoard", boolean[][].class),
+		new ObjectStreamField("generation", long.class),
+		new ObjectStreamField("rule", String.class)
+	};
+
+	private static final int DEFAULT_BAND_HEIGHT = 64;
+	//chance of a cell starting out alive in setup, .2 out of 65536
+	private static final int SETUP_CHANCE = 13107;
+	//tiles are one word wide and this many rows tall
+	static final int TILE_HEIGHT = 64;
+
 	private int xLength = 35;
 	private int yLength = 35;
-	private boolean[][] board;
-	private boolean[][] nextBoard;
-	
+	private transient int wordsPerRow;
+	private transient long lastWordMask;
+	//the two generation buffers, buffers[generation & 1] is the live one
+	private transient long[][] buffers;
+	private transient long[] board;
+	private transient long[] nextBoard;
+	private long generation = 0;
+	private transient Rule rule = Rule.CONWAY;
+	private transient ForkJoinPool pool;
+	private transient int bandHeight = DEFAULT_BAND_HEIGHT;
+	private transient int tilesY;
+	//tiles that changed last generation (or were edited since), and the ones changing this generation
+	private transient boolean[] changedTiles;
+	private transient boolean[] nextChangedTiles;
+	//tiles changed since a BoardHistory last took them, so its deltas only have to look at those
+	private transient boolean[] unrecordedTiles;
+	private transient int[] activeTilesPerRow;
+	private transient int activeTiles;
+	//tree of band tasks, built once and reused every generation so stepping in parallel doesn't allocate
+	private transient BandTask bandTasks;
+	//cells that flipped, and the ones of those that came alive, in each tile row last generation
+	private transient long[] flipsPerRow;
+	private transient long[] birthsPerRow;
+	//hash of the changes to each tile row last generation
+	private transient long[] hashPerRow;
+	//live cells and the hash of the board, only worked out from scratch after changes other than stepping and setCell
+	private transient long population;
+	private transient long hash;
+	private transient boolean countsKnown;
+	private transient BoardMetrics metrics = new BoardMetrics();
+	//live buffer shared with copies of the board, until one of them writes to it
+	private transient SharedCells shared;
+
 	/**
 	 * Constructor that defines the size of the board to make.
 	 * 
@@ -24,138 +92,1028 @@ public class Board implements Serializable{
 	public Board(int xLength, int yLength){
 		this.xLength = xLength;
 		this.yLength = yLength;
+		computeRowLayout();
 
-		board = new boolean[yLength][xLength];
-		nextBoard = new boolean[yLength][xLength];
+		buffers = new long[2][yLength * wordsPerRow];
+		selectBuffers();
 	}
-	
+
 	/**
 	 * Applies an impulse to the board to switch the value of a random selection of squares
 	 * 
 	 * @param percent Strength of the impulse, should be between 0 and 1.
 	 */
+	@Override
 	public void impulse(double percent){ //there's probably a better thing to call this than "impulse"
-		for(int x = 0; x < xLength; ++x){
-			for(int y = 0; y < yLength; ++y){
-				if(Math.random() < percent){
-					board[y][x] = !board[y][x];
-				}
-			}
+		impulse(percent, new Random());
+	}
+
+	/**
+	 * Applies an impulse to the board using the given random number generator, so it can be repeated.
+	 * 
+	 * @param percent Strength of the impulse, should be between 0 and 1.
+	 * @param random Random number generator to use
+	 */
+	@Override
+	public void impulse(double percent, Random random){
+		if(percent <= 0){
+			return;
+		}
+		//jumps straight from one flipped cell to the next instead of rolling for every cell
+		long cells = (long)xLength * yLength;
+		double logMiss = Math.log(1 - percent);
+		for(long i = cellsToSkip(random, logMiss); i < cells; i += 1 + cellsToSkip(random, logMiss)){
+			toggleCell((int)(i % xLength), (int)(i / xLength));
 		}
 	}
-	
+
+	/**
+	 * Works out how many cells an impulse passes over before the next one it flips.  The gaps between flipped
+	 * cells are geometric, so they can be drawn directly with one random number each.
+	 * 
+	 * @param random Random number generator to use
+	 * @param logMiss Log of the chance of a cell not being flipped
+	 * @return Returns the number of cells to skip
+	 */
+	static long cellsToSkip(Random random, double logMiss){
+		//capped so adding it to a cell index can't overflow
+		return Math.min((long)(Math.log(1 - random.nextDouble()) / logMiss), Long.MAX_VALUE / 2);
+	}
+
 	/**
 	 * Method to initialize the board with random values.
 	 * 
 	 */
+	@Override
 	public void setup(){
-		for(int x = 0; x < xLength; ++x){
-			for(int y = 0; y < yLength; ++y){
-				board[y][x] = Math.random() < .2;
+		setup(new Random().nextLong());
+	}
+
+	/**
+	 * Fills the board with random values from a seed, in parallel if there's a thread pool.  Every row has its
+	 * own random number generator seeded from its number, so the same seed gives the same board however many
+	 * threads fill it.  The cells are made a whole word at a time.
+	 * 
+	 * @param seed Seed to fill the board from
+	 */
+	public void setup(long seed){
+		ownBuffers();
+		if(pool != null && yLength > bandHeight){
+			pool.invoke(new SeedTask(seed, 0, yLength));
+		}else{
+			seedRows(seed, 0, yLength);
+		}
+		markAllTilesChanged();
+	}
+
+	/**
+	 * Task that fills a band of rows from a seed, splitting itself in half until the bands are no taller than
+	 * bandHeight.
+	 */
+	private class SeedTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		private final long seed;
+		private final int fromY;
+		private final int toY;
+
+		SeedTask(long seed, int fromY, int toY){
+			this.seed = seed;
+			this.fromY = fromY;
+			this.toY = toY;
+		}
+
+		@Override
+		protected void compute(){
+			if(toY - fromY <= bandHeight){
+				seedRows(seed, fromY, toY);
+			}else{
+				int mid = fromY + (toY - fromY) / 2;
+				invokeAll(new SeedTask(seed, fromY, mid), new SeedTask(seed, mid, toY));
 			}
 		}
 	}
-	
+
+	/**
+	 * Fills some rows with random values from a seed.
+	 */
+	private void seedRows(long seed, int fromY, int toY){
+		for(int y = fromY; y < toY; ++y){
+			SplittableRandom random = new SplittableRandom(wordHash(y, seed));
+			int row = y * wordsPerRow;
+			for(int w = 0; w < wordsPerRow; ++w){
+				board[row + w] = randomWord(random);
+			}
+			board[row + wordsPerRow - 1] &= lastWordMask;
+		}
+	}
+
+	/**
+	 * Makes a word where each cell is alive with a chance of SETUP_CHANCE out of 65536.  Going through the
+	 * binary digits of the chance from the lowest, each digit ors in another random word if it's a 1 and ands
+	 * one in if it's a 0, which halves the chance so far and adds the digit on top.
+	 */
+	private static long randomWord(SplittableRandom random){
+		long word = 0;
+		for(int digit = 0; digit < 16; ++digit){
+			if((SETUP_CHANCE >>> digit & 1) != 0){
+				word |= random.nextLong();
+			}else{
+				word &= random.nextLong();
+			}
+		}
+		return word;
+	}
+
+	/**
+	 * Method to initialize the board with random values from the given random number generator, so it can be repeated.
+	 * 
+	 * @param random Random number generator to use
+	 */
+	@Override
+	public void setup(Random random){
+		ownBuffers();
+		Arrays.fill(board, 0L);
+		for(int y = 0; y < yLength; ++y){
+			for(int x = 0; x < xLength; ++x){
+				if(random.nextDouble() < .2){
+					board[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+		markAllTilesChanged();
+	}
+
 	/**
 	 * Iterates the generation of the board by one.
 	 * 
 	 */
+	@Override
 	public void refreshBoard(){
-		
-		for(int x = 0; x < xLength; ++x){
-			for(int y = 0; y < yLength; ++y){
-				nextBoard[y][x] = checkNeighbours(x, y);
+		long start = System.nanoTime();
+		ownBuffers();
+		if(!countsKnown){
+			recount();
+		}
+		//edits since the last generation are only marked until the swap below
+		for(int i = 0; i < changedTiles.length; ++i){
+			unrecordedTiles[i] |= changedTiles[i];
+		}
+		if(pool != null && yLength > bandHeight){
+			if(bandTasks == null){
+				bandTasks = new BandTask(0, tilesY);
 			}
+			bandTasks.reinitialize();
+			//invoke only returns once every band is done, so it doubles as the barrier between generations
+			pool.invoke(bandTasks);
+		}else{
+			stepTileRows(0, tilesY);
 		}
 
-		for(int x = 0; x < xLength; ++x){
-			for(int y = 0; y < yLength; ++y){
-				board[y][x] = nextBoard[y][x];
+		activeTiles = 0;
+		long flips = 0;
+		long births = 0;
+		for(int tileY = 0; tileY < tilesY; ++tileY){
+			activeTiles += activeTilesPerRow[tileY];
+			flips += flipsPerRow[tileY];
+			births += birthsPerRow[tileY];
+			hash ^= hashPerRow[tileY];
+		}
+		population += births - (flips - births);
+		boolean[] temp = changedTiles;
+		changedTiles = nextChangedTiles;
+		nextChangedTiles = temp;
+
+		//no copying back, the next generation just becomes the live buffer
+		++generation;
+		selectBuffers();
+		long end = System.nanoTime();
+		metrics.recordStep(generation, population, births, flips - births, end - start, end);
+	}
+	
+	/**
+	 * Computes the next generation of a range of tile rows into nextBoard.  Only tiles that changed last
+	 * generation, or that touch one that did, are looked at.  Every other tile is already the same in both
+	 * buffers, since neither it nor anything around it changed when nextBoard was last the live buffer.
+	 * 
+	 * @param fromTileY First tile row to compute
+	 * @param toTileY Tile row to stop before
+	 */
+	private void stepTileRows(int fromTileY, int toTileY){
+		for(int tileY = fromTileY; tileY < toTileY; ++tileY){
+			int upTiles = (tileY == 0 ? tilesY - 1 : tileY - 1) * wordsPerRow;
+			int downTiles = (tileY == tilesY - 1 ? 0 : tileY + 1) * wordsPerRow;
+			int tiles = tileY * wordsPerRow;
+			int fromY = tileY * TILE_HEIGHT;
+			int toY = Math.min(fromY + TILE_HEIGHT, yLength);
+			int active = 0;
+			flipsPerRow[tileY] = 0;
+			birthsPerRow[tileY] = 0;
+			hashPerRow[tileY] = 0;
+
+			for(int tileX = 0; tileX < wordsPerRow; ++tileX){
+				int left = tileX == 0 ? wordsPerRow - 1 : tileX - 1;
+				int right = tileX == wordsPerRow - 1 ? 0 : tileX + 1;
+				if(!(changedTiles[upTiles + left] || changedTiles[upTiles + tileX] || changedTiles[upTiles + right]
+				  || changedTiles[tiles + left] || changedTiles[tiles + tileX] || changedTiles[tiles + right]
+				  || changedTiles[downTiles + left] || changedTiles[downTiles + tileX] || changedTiles[downTiles + right])){
+					nextChangedTiles[tiles + tileX] = false;
+					continue;
+				}
+
+				//rows that don't wrap first, then the top and bottom rows of the torus on their own
+				long difference = 0;
+				int innerFromY = Math.max(fromY, 1);
+				int innerToY = Math.min(toY, yLength - 1);
+				if(tileX > 0 && tileX < wordsPerRow - 1){
+					long flips = 0;
+					long births = 0;
+					long hashChange = 0;
+					for(int y = innerFromY; y < innerToY; ++y){
+						int row = y * wordsPerRow + tileX;
+						long next = stepInteriorWord(board, row, wordsPerRow, rule);
+						long changed = next ^ board[row];
+						difference |= changed;
+						flips += Long.bitCount(changed);
+						births += Long.bitCount(changed & next);
+						if(changed != 0){
+							hashChange ^= wordHash(row, board[row]) ^ wordHash(row, next);
+						}
+						nextBoard[row] = next;
+					}
+					flipsPerRow[tileY] += flips;
+					birthsPerRow[tileY] += births;
+					hashPerRow[tileY] ^= hashChange;
+				}else{
+					for(int y = innerFromY; y < innerToY; ++y){
+						difference |= stepEdgeWord(y, tileX);
+					}
+				}
+				if(fromY == 0){
+					difference |= stepEdgeWord(0, tileX);
+				}
+				if(toY == yLength && yLength > 1){
+					difference |= stepEdgeWord(yLength - 1, tileX);
+				}
+				nextChangedTiles[tiles + tileX] = difference != 0;
+				active++;
 			}
+			activeTilesPerRow[tileY] = active;
 		}
 	}
 	
 	/**
-	 * Counts the number of Neighbours a given cell has, then determines the fate of that cell.
+	 * Computes the next generation of one word that's on an edge of the board, either in the first or last column
+	 * of words or in the top or bottom row, where the neighbours wrap around.
 	 * 
-	 * @param x X location of cell to check
-	 * @param y Y location of cell to check
-	 * @return Returns if the given cell should live or die
+	 * @param y Row of the word
+	 * @param w Index of the word within the row
+	 * @return Returns the bits that changed, which are also counted into the flips, births and hash of the tile row
 	 */
-	private boolean checkNeighbours(int x, int y){
-		int neighbourCount = 0;
-		int[] XTargetArr = {x-1, x+0, x+1};
-		int[] YTargetArr = {y-1, y+0, y+1};
-		boolean result;
-		//assume default, change for special cases
-		
-		//borders are special case
-		if(x == 0){
-			XTargetArr[0] = xLength-1;
-		}else if(x == xLength-1){
-			XTargetArr[2] = 0;
+	private long stepEdgeWord(int y, int w){
+		int above = (y == 0 ? yLength - 1 : y - 1) * wordsPerRow;
+		int row = y * wordsPerRow;
+		int below = (y == yLength - 1 ? 0 : y + 1) * wordsPerRow;
+		long next = stepWord(board, above, row, below, w, wordsPerRow, xLength, rule);
+		if(w == wordsPerRow - 1){
+			next &= lastWordMask;
 		}
-		
-		if(y == 0){
-			YTargetArr[0] = yLength-1;
-		}else if(y == yLength-1){
-			YTargetArr[2] = 0;
+		nextBoard[row + w] = next;
+		long changed = next ^ board[row + w];
+		flipsPerRow[y / TILE_HEIGHT] += Long.bitCount(changed);
+		birthsPerRow[y / TILE_HEIGHT] += Long.bitCount(changed & next);
+		if(changed != 0){
+			hashPerRow[y / TILE_HEIGHT] ^= wordHash(row + w, board[row + w]) ^ wordHash(row + w, next);
 		}
+		return changed;
+	}
+	
+	/**
+	 * Task that steps a band of tile rows, splitting itself in half until the bands are no taller than bandHeight.
+	 * Every band only reads the current generation and only writes its own rows of the next one, so the
+	 * result is the same as stepping serially.
+	 * 
+	 * The halves are made once, with the task, and reinitialized each time it runs.
+	 */
+	private class BandTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		private final int fromTileY;
+		private final int toTileY;
+		private final BandTask top;
+		private final BandTask bottom;
 		
-		for(int XTarget: XTargetArr){
-			for(int YTarget: YTargetArr){
-				if( XTarget == x && YTarget == y){
-					continue;
-				}
-				if(board[YTarget][XTarget]){
-					neighbourCount++;
-				}
+		BandTask(int fromTileY, int toTileY){
+			this.fromTileY = fromTileY;
+			this.toTileY = toTileY;
+			if(toTileY - fromTileY <= 1 || (toTileY - fromTileY) * TILE_HEIGHT <= bandHeight){
+				top = null;
+				bottom = null;
+			}else{
+				int mid = fromTileY + (toTileY - fromTileY) / 2;
+				top = new BandTask(fromTileY, mid);
+				bottom = new BandTask(mid, toTileY);
 			}
 		}
 		
-		if(board[y][x]){ 
-			if(neighbourCount == 2 || neighbourCount == 3){
-				result = true;
-			} else {
-				result = false;
+		@Override
+		protected void compute(){
+			if(top == null){
+				stepTileRows(fromTileY, toTileY);
+			}else{
+				top.reinitialize();
+				bottom.reinitialize();
+				invokeAll(top, bottom);
 			}
-		} else { 
-			result = neighbourCount == 3;
 		}
-		return result;
 	}
-	
+
+	/**
+	 * Computes the next generation of one packed word, 64 cells at a time.
+	 * 
+	 * The eight neighbour words are added together with a bit-sliced adder, giving the neighbour count of every
+	 * cell in the word as four bit planes, and the rule is then applied to the whole word at once.
+	 * 
+	 * @param cells Packed cells of the current generation
+	 * @param above Offset of the row above (already wrapped)
+	 * @param row Offset of the row being computed
+	 * @param below Offset of the row below (already wrapped)
+	 * @param w Index of the word within the row
+	 * @param words Number of words in a row
+	 * @param xLength Number of cells in a row
+	 * @param rule Rule to step by
+	 * @return Returns the next generation of the word, bits past the end of the row still need masking off
+	 */
+	static long stepWord(long[] cells, int above, int row, int below, int w, int words, int xLength, Rule rule){
+		return nextWord(rule, west(cells, above, w, words, xLength), cells[above + w], east(cells, above, w, words, xLength),
+						west(cells, row, w, words, xLength), cells[row + w], east(cells, row, w, words, xLength),
+						west(cells, below, w, words, xLength), cells[below + w], east(cells, below, w, words, xLength));
+	}
+
+	/**
+	 * Computes the next generation of a word with words on all four sides of it, so nothing wraps and there
+	 * are no branches.
+	 * 
+	 * @param cells Packed cells of the current generation
+	 * @param i Index of the word in cells, not in the first or last row or column of words
+	 * @param words Number of words in a row
+	 * @param rule Rule to step by
+	 * @return Returns the next generation of the word
+	 */
+	static long stepInteriorWord(long[] cells, int i, int words, Rule rule){
+		int up = i - words;
+		int down = i + words;
+		long n = cells[up];
+		long c = cells[i];
+		long s = cells[down];
+		return nextWord(rule, (n << 1) | (cells[up - 1] >>> 63), n, (n >>> 1) | (cells[up + 1] << 63),
+						(c << 1) | (cells[i - 1] >>> 63), c, (c >>> 1) | (cells[i + 1] << 63),
+						(s << 1) | (cells[down - 1] >>> 63), s, (s >>> 1) | (cells[down + 1] << 63));
+	}
+
+	/**
+	 * Adds up the eight neighbour words of a word and applies the rule to it.  Each neighbour word has every
+	 * cell's neighbour in that direction in the same bit as the cell.
+	 */
+	private static long nextWord(Rule rule, long nw, long n, long ne, long cw, long c, long ce, long sw, long s, long se){
+		//top and bottom rows through full adders, middle row through a half adder
+		long top1 = nw ^ n ^ ne;
+		long top2 = (nw & n) | (ne & (nw ^ n));
+		long mid1 = cw ^ ce;
+		long mid2 = cw & ce;
+		long bot1 = sw ^ s ^ se;
+		long bot2 = (sw & s) | (se & (sw ^ s));
+
+		//add the ones, then the twos
+		long ones = top1 ^ mid1 ^ bot1;
+		long onesCarry = (top1 & mid1) | (bot1 & (top1 ^ mid1));
+		long twos = top2 ^ mid2 ^ bot2;
+		long twosCarry = (top2 & mid2) | (bot2 & (top2 ^ mid2));
+
+		long bit1 = twos ^ onesCarry;
+		long bit2 = twosCarry ^ (twos & onesCarry);
+		long bit3 = twosCarry & twos & onesCarry;
+
+		return rule.apply(c, ones, bit1, bit2, bit3);
+	}
+
+	/**
+	 * Gets a word of the given row shifted so that each bit holds the cell to the left of it, wrapping around the row.
+	 */
+	private static long west(long[] cells, int row, int w, int words, int xLength){
+		long carry;
+		if(w == 0){
+			int x = xLength - 1;
+			carry = cells[row + (x >>> 6)] >>> x;
+		}else{
+			carry = cells[row + w - 1] >>> 63;
+		}
+		return (cells[row + w] << 1) | (carry & 1L);
+	}
+
+	/**
+	 * Gets a word of the given row shifted so that each bit holds the cell to the right of it, wrapping around the row.
+	 */
+	private static long east(long[] cells, int row, int w, int words, int xLength){
+		long shifted = cells[row + w] >>> 1;
+		if(w == words - 1){
+			//cell 0 sits just past the last cell of the row
+			return shifted | ((cells[row] & 1L) << (xLength - 1));
+		}
+		return shifted | (cells[row + w + 1] << 63);
+	}
+
 	/**
 	 * Clears the board of all living cells.
 	 */
+	@Override
 	public void clearBoard(){
-		board = new boolean[yLength][xLength];
+		ownBuffers();
+		Arrays.fill(board, 0, yLength * wordsPerRow, 0L);
+		markAllTilesChanged();
 	}
-	
+
+	/**
+	 * Gets a copy of the board as a grid of booleans, indexed [y][x].  Changes to the copy do not affect the board,
+	 * use setCell for that.
+	 * 
+	 * @return Returns the board as booleans
+	 */
 	public boolean[][] getBoard(){
+		boolean[][] result = new boolean[yLength][xLength];
+		for(int y = 0; y < yLength; ++y){
+			for(int x = 0; x < xLength; ++x){
+				result[y][x] = getCell(x, y);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if a cell is alive.
+	 * 
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @return Returns true if the cell is alive
+	 */
+	@Override
+	public boolean getCell(int x, int y){
+		return (board[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Sets a cell to be alive or dead.
+	 * 
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @param alive New state of the cell
+	 */
+	@Override
+	public void setCell(int x, int y, boolean alive){
+		ownBuffers();
+		if(getCell(x, y) != alive){
+			population += alive ? 1 : -1;
+			toggleHash(x, y);
+		}
+		if(alive){
+			board[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+		}else{
+			board[y * wordsPerRow + (x >>> 6)] &= ~(1L << x);
+		}
+		changedTiles[(y / TILE_HEIGHT) * wordsPerRow + (x >>> 6)] = true;
+	}
+
+	/**
+	 * Switches a cell from alive to dead, or from dead to alive.
+	 * 
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 */
+	@Override
+	public void toggleCell(int x, int y){
+		ownBuffers();
+		population += getCell(x, y) ? -1 : 1;
+		toggleHash(x, y);
+		board[y * wordsPerRow + (x >>> 6)] ^= 1L << x;
+		changedTiles[(y / TILE_HEIGHT) * wordsPerRow + (x >>> 6)] = true;
+	}
+
+	/**
+	 * Copies one row of packed cells out of the board, for writing it to a file.
+	 * 
+	 * @param y Row to copy
+	 * @param words Array to copy the row's words into, at least wordsPerRow long
+	 */
+	void copyRowTo(int y, long[] words){
+		System.arraycopy(board, y * wordsPerRow, words, 0, wordsPerRow);
+	}
+
+	/**
+	 * Replaces one row of packed cells, for reading it from a file.  Bits past the end of the row are ignored.
+	 * 
+	 * @param y Row to replace
+	 * @param words Packed cells of the row
+	 */
+	void copyRowFrom(int y, long[] words){
+		ownBuffers();
+		System.arraycopy(words, 0, board, y * wordsPerRow, wordsPerRow);
+		board[y * wordsPerRow + wordsPerRow - 1] &= lastWordMask;
+		Arrays.fill(changedTiles, (y / TILE_HEIGHT) * wordsPerRow, (y / TILE_HEIGHT + 1) * wordsPerRow, true);
+		countsKnown = false;
+	}
+
+	/**
+	 * Stamps packed rows of cells onto the board, replacing the cells they cover.  Each word of a row is shifted
+	 * into the one or two board words it lands on, so a whole pattern goes on a word at a time.  Anything past the
+	 * right edge of the board is left off.
+	 * 
+	 * @param rows Packed cells of the rows, laid out like the board's own
+	 * @param rowWords Words per row of the rows
+	 * @param width Width of the rows in cells
+	 * @param height Number of rows to stamp, which must fit on the board
+	 * @param x X location of the first cell of each row
+	 * @param y Row to stamp the first row onto
+	 */
+	void stamp(long[] rows, int rowWords, int width, int height, int x, int y){
+		ownBuffers();
+		if(x >= xLength || height <= 0){
+			return;
+		}
+		int shift = x & 63;
+		for(int i = 0; i < height; ++i){
+			int row = (y + i) * wordsPerRow;
+			for(int pw = 0; pw < rowWords; ++pw){
+				long value = rows[i * rowWords + pw];
+				long mask = pw == rowWords - 1 ? -1L >>> (rowWords * 64 - width) : -1L;
+				int w = (x >>> 6) + pw;
+				if(w < wordsPerRow){
+					board[row + w] = (board[row + w] & ~(mask << shift)) | (value << shift);
+				}
+				if(shift != 0 && w + 1 < wordsPerRow){
+					board[row + w + 1] = (board[row + w + 1] & ~(mask >>> (64 - shift))) | (value >>> (64 - shift));
+				}
+			}
+			board[row + wordsPerRow - 1] &= lastWordMask;
+		}
+
+		int lastTileX = Math.min(wordsPerRow - 1, (x + width - 1) >>> 6);
+		for(int tileY = y / TILE_HEIGHT; tileY <= (y + height - 1) / TILE_HEIGHT; ++tileY){
+			Arrays.fill(changedTiles, tileY * wordsPerRow + (x >>> 6), tileY * wordsPerRow + lastTileX + 1, true);
+		}
+		countsKnown = false;
+	}
+
+	/**
+	 * Replaces the whole board with packed cells from somewhere else, like a generation kept in a BoardHistory,
+	 * resizing it first if need be.
+	 *
+	 * @param xLength Size of the cells in the X direction
+	 * @param yLength Size of the cells in the Y direction
+	 * @param cells Packed cells, laid out like the board's own
+	 * @param generation Generation the cells are from
+	 */
+	void setCells(int xLength, int yLength, long[] cells, long generation){
+		if(xLength != this.xLength || yLength != this.yLength){
+			setBoardSize(xLength, yLength);
+		}
+		ownBuffers();
+		setGeneration(generation);
+		System.arraycopy(cells, 0, board, 0, yLength * wordsPerRow);
+	}
+
+	/**
+	 * Gets the tiles that might have changed since the last time this was called, and starts over.
+	 *
+	 * @param tiles Array to put them in if it's the right size, or null
+	 * @return Returns a flag per tile, indexed [tileY * wordsPerRow + word]
+	 */
+	boolean[] takeUnrecordedTiles(boolean[] tiles){
+		if(tiles == null || tiles.length != unrecordedTiles.length){
+			tiles = new boolean[unrecordedTiles.length];
+		}
+		for(int i = 0; i < tiles.length; ++i){
+			tiles[i] = unrecordedTiles[i] || changedTiles[i];
+			unrecordedTiles[i] = false;
+		}
+		return tiles;
+	}
+
+	/**
+	 * Gets the live buffer itself, yLength rows of wordsPerRow words, for reading without copying it.  Only good
+	 * until the board is next changed.
+	 *
+	 * @return Returns the packed cells
+	 */
+	long[] getLiveCells(){
 		return board;
 	}
 
+	@Override
+	public void copyTo(BoardSnapshot snapshot){
+		long[] cells = snapshot.reset(xLength, yLength, generation);
+		System.arraycopy(board, 0, cells, 0, yLength * wordsPerRow);
+	}
+
+	/**
+	 * Sets the pool used to step the board in parallel row bands.
+	 * 
+	 * @param pool Pool to step on, or null to step on the calling thread
+	 */
+	public void setThreadPool(ForkJoinPool pool){
+		this.pool = pool;
+	}
+	
+	public ForkJoinPool getThreadPool(){
+		return pool;
+	}
+	
+	/**
+	 * Sets the number of rows in each band when stepping in parallel.
+	 * 
+	 * @param bandHeight Rows per band, at least 1
+	 */
+	public void setBandHeight(int bandHeight){
+		if(bandHeight < 1){
+			throw new IllegalArgumentException("Band height must be at least 1");
+		}
+		this.bandHeight = bandHeight;
+		bandTasks = null;
+	}
+	
+	public int getBandHeight(){
+		return bandHeight;
+	}
+
+	@Override
+	public Rule getRule(){
+		return rule;
+	}
+
+	/**
+	 * Sets the rule the board is stepped by.  Every tile has to be looked at again, since ones that were stable
+	 * under the old rule might not be now.
+	 * 
+	 * @param rule New rule
+	 * @throws IllegalArgumentException If the rule has more than two states
+	 */
+	@Override
+	public void setRule(Rule rule){
+		if(rule.getStates() != 2){
+			throw new IllegalArgumentException("A rule with more than two states needs a multi-state board");
+		}
+		this.rule = rule;
+		markAllTilesChanged();
+	}
+
+	/**
+	 * Gets the number of generations this board has been stepped through.
+	 * 
+	 * @return Returns the generation count
+	 */
+	@Override
+	public long getGeneration(){
+		return generation;
+	}
+
+	/**
+	 * Sets the generation count, for when the board's cells come from somewhere that has already stepped them.
+	 * 
+	 * @param generation New generation count
+	 */
+	void setGeneration(long generation){
+		//a copy hasn't made its other buffer yet, and the generation might pick it as the live one
+		ownBuffers();
+		this.generation = generation;
+		selectBuffers();
+		markAllTilesChanged();
+	}
+
+	/**
+	 * Gets the number of live cells.  It's kept up to date while stepping, so this only has to count them after
+	 * the board was changed some other way than stepping or setting single cells.
+	 * 
+	 * @return Returns the population
+	 */
+	public long getPopulation(){
+		if(!countsKnown){
+			recount();
+			metrics.recordPopulation(population);
+		}
+		return population;
+	}
+
+	/**
+	 * Gets a hash of the board's cells.  Boards of the same size with the same cells have the same hash, and it's
+	 * kept up to date while stepping, so this only has to go over the board after changes other than stepping or
+	 * setting single cells.
+	 * 
+	 * @return Returns the hash
+	 */
+	public long getHash(){
+		if(!countsKnown){
+			recount();
+		}
+		return hash;
+	}
+
+	/**
+	 * Checks if the board's cells are the same as the ones in a snapshot.
+	 * 
+	 * @param snapshot Snapshot to compare with
+	 * @return Returns true if the snapshot is the same size and has the same live cells
+	 */
+	public boolean sameCells(BoardSnapshot snapshot){
+		if(snapshot.getXLength() != xLength || snapshot.getYLength() != yLength){
+			return false;
+		}
+		long[] cells = snapshot.getCells();
+		for(int i = 0; i < yLength * wordsPerRow; ++i){
+			if(cells[i] != board[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the generation count on without stepping, for when the cells are known to be the same as they would
+	 * be that many generations on, like on a board that's settled into a cycle.
+	 * 
+	 * @param count Number of generations to skip
+	 */
+	void skipGenerations(long count){
+		ownBuffers();
+		if((count & 1) != 0){
+			//keep the same buffer live, whichever one the new generation picks
+			long[] temp = buffers[0];
+			buffers[0] = buffers[1];
+			buffers[1] = temp;
+		}
+		generation += count;
+		selectBuffers();
+	}
+
+	/**
+	 * Updates the hash for a cell about to be flipped.
+	 */
+	private void toggleHash(int x, int y){
+		int i = y * wordsPerRow + (x >>> 6);
+		hash ^= wordHash(i, board[i]) ^ wordHash(i, board[i] ^ (1L << x));
+	}
+
+	/**
+	 * Counts the live cells and hashes the board from scratch.
+	 */
+	private void recount(){
+		population = 0;
+		hash = 0;
+		for(int i = 0; i < yLength * wordsPerRow; ++i){
+			population += Long.bitCount(board[i]);
+			hash ^= wordHash(i, board[i]);
+		}
+		countsKnown = true;
+	}
+
+	/**
+	 * Hashes one word of the board along with where it is, with the MurmurHash3 finalizer.
+	 */
+	private static long wordHash(int index, long word){
+		long h = word * 0x9E3779B97F4A7C15L + index;
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	/**
+	 * Makes a copy of the board, with the same cells, rule and generation.  The copy shares the live buffer
+	 * instead of copying it, and whichever board writes to its cells first, by stepping or editing, copies it then.
+	 * 
+	 * @return Returns the copy
+	 */
+	@Override
+	public Board copy(){
+		if(shared != null && shared.cells != board){
+			//stepped since it was shared, so the shared one is the other buffer now
+			ownBuffers();
+		}
+		if(shared == null){
+			shared = new SharedCells(board);
+		}
+		shared.owners.incrementAndGet();
+		return new Board(this);
+	}
+
+	/**
+	 * Constructor for a copy sharing the live buffer of another board.  The other buffer isn't made until the copy
+	 * is stepped.
+	 */
+	private Board(Board original){
+		xLength = original.xLength;
+		yLength = original.yLength;
+		generation = original.generation;
+		rule = original.rule;
+		bandHeight = original.bandHeight;
+		computeRowLayout();
+		buffers = new long[2][];
+		buffers[(int)(generation & 1)] = original.board;
+		shared = original.shared;
+		selectBuffers();
+	}
+
+	/**
+	 * A buffer shared between a board and its copies, and how many of them are still using it.
+	 */
+	private static final class SharedCells{
+		private final long[] cells;
+		private final AtomicInteger owners = new AtomicInteger(1);
+
+		SharedCells(long[] cells){
+			this.cells = cells;
+		}
+	}
+
+	/**
+	 * Makes sure neither buffer is shared before writing to the cells.  The shared buffer is copied unless every
+	 * other board has already let go of it, and the second buffer of a copy is made if it hasn't been yet.  Must
+	 * be called before writing rows from more than one thread.
+	 */
+	void ownBuffers(){
+		if(shared != null){
+			if(shared.owners.get() > 1){
+				long[] copy = Arrays.copyOf(shared.cells, shared.cells.length);
+				buffers[buffers[0] == shared.cells ? 0 : 1] = copy;
+			}
+			//only let go once it's copied, so the last board left knows nobody is still reading it
+			shared.owners.decrementAndGet();
+			shared = null;
+			selectBuffers();
+		}
+		if(nextBoard == null){
+			buffers[(int)((generation + 1) & 1)] = new long[board.length];
+			selectBuffers();
+		}
+	}
+
+	/**
+	 * Gets the board's metrics, which are updated every generation and can be read from any thread.
+	 * 
+	 * @return Returns the metrics
+	 */
+	public BoardMetrics getMetrics(){
+		return metrics;
+	}
+
+	/**
+	 * Gets the number of tiles that were looked at in the last generation, the rest were skipped as stable.
+	 * 
+	 * @return Returns the number of active tiles
+	 */
+	public int getActiveTileCount(){
+		return activeTiles;
+	}
+
+	/**
+	 * Gets the number of tiles the board is split into.  Tiles are 64 cells wide and 64 cells tall.
+	 * 
+	 * @return Returns the total number of tiles
+	 */
+	public int getTileCount(){
+		return changedTiles.length;
+	}
+
+	@Override
 	public int getXLength() {
 		return xLength;
 	}
 
+	@Override
 	public int getYLength() {
 		return yLength;
 	}
-	
+
+	/**
+	 * Changes the size of the board, keeping the cells that are still on it.  The buffers have room to spare, so
+	 * the cells are usually just moved along inside them, and they're only reallocated when the board outgrows
+	 * them or shrinks to a fraction of them.
+	 */
+	@Override
 	public void setBoardSize(int xLength, int yLength){
+		ownBuffers();
+		int oldWordsPerRow = wordsPerRow;
+		int keptRows = Math.min(this.yLength, yLength);
 		this.xLength = xLength;
 		this.yLength = yLength;
-		boolean[][] temp = new boolean[this.yLength][this.xLength];
-		for(int i = 0; i < this.yLength; ++i){
-			try{
-				temp[i] = Arrays.copyOf(board[i], this.xLength);
-			}catch(ArrayIndexOutOfBoundsException e){
-				temp[i] = new boolean[this.xLength];
+		computeRowLayout();
+
+		int size = yLength * wordsPerRow;
+		if(size > board.length || size < board.length / 4){
+			//half again as much room as needed, so growing a bit at a time doesn't reallocate every time
+			long[] temp = new long[size + size / 2];
+			int copyWords = Math.min(oldWordsPerRow, wordsPerRow);
+			for(int i = 0; i < keptRows; ++i){
+				System.arraycopy(board, i * oldWordsPerRow, temp, i * wordsPerRow, copyWords);
+				temp[i * wordsPerRow + wordsPerRow - 1] &= lastWordMask;
+			}
+			buffers[(int)(generation & 1)] = temp;
+			buffers[(int)((generation + 1) & 1)] = new long[temp.length];
+			selectBuffers();
+		}else{
+			moveRows(oldWordsPerRow, keptRows);
+			Arrays.fill(board, keptRows * wordsPerRow, size, 0L);
+		}
+		//every tile is marked as changed, so whatever is left in the other buffer gets written over
+	}
+
+	/**
+	 * Moves the rows of the live buffer from one row length to the current one, in place.  Narrower rows are
+	 * moved starting from the top so nothing is written over before it's moved, and wider ones from the bottom.
+	 *
+	 * @param oldWordsPerRow Words per row the buffer is laid out with now
+	 * @param rows Number of rows to move
+	 */
+	private void moveRows(int oldWordsPerRow, int rows){
+		if(wordsPerRow <= oldWordsPerRow){
+			for(int i = 0; i < rows; ++i){
+				System.arraycopy(board, i * oldWordsPerRow, board, i * wordsPerRow, wordsPerRow);
+				board[i * wordsPerRow + wordsPerRow - 1] &= lastWordMask;
+			}
+		}else{
+			for(int i = rows - 1; i >= 0; --i){
+				System.arraycopy(board, i * oldWordsPerRow, board, i * wordsPerRow, oldWordsPerRow);
+				Arrays.fill(board, i * wordsPerRow + oldWordsPerRow, (i + 1) * wordsPerRow, 0L);
+			}
+		}
+	}
+
+	/**
+	 * Works out the number of words per row, which bits of the last word are real cells, and how the board
+	 * is split into tiles.  Every tile starts out marked as changed.
+	 */
+	private void computeRowLayout(){
+		wordsPerRow = (xLength + 63) >>> 6;
+		lastWordMask = -1L >>> (wordsPerRow * 64 - xLength);
+
+		tilesY = (yLength + TILE_HEIGHT - 1) / TILE_HEIGHT;
+		changedTiles = new boolean[tilesY * wordsPerRow];
+		nextChangedTiles = new boolean[tilesY * wordsPerRow];
+		unrecordedTiles = new boolean[tilesY * wordsPerRow];
+		activeTilesPerRow = new int[tilesY];
+		flipsPerRow = new long[tilesY];
+		birthsPerRow = new long[tilesY];
+		hashPerRow = new long[tilesY];
+		bandTasks = null;
+		markAllTilesChanged();
+	}
+	
+	/**
+	 * Marks every tile as changed, so the next generation looks at the whole board.  Needed whenever the live
+	 * buffer is changed by anything other than stepping.
+	 */
+	private void markAllTilesChanged(){
+		Arrays.fill(changedTiles, true);
+		countsKnown = false;
+	}
+	
+	/**
+	 * Points board at the live buffer and nextBoard at the other one, based on the generation count.
+	 */
+	private void selectBuffers(){
+		board = buffers[(int)(generation & 1)];
+		nextBoard = buffers[(int)((generation + 1) & 1)];
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("xLength", xLength);
+		fields.put("yLength", yLength);
+		fields.put("board", getBoard());
+		fields.put("nextBoard", null);
+		fields.put("generation", generation);
+		fields.put("rule", rule.toString());
+		out.writeFields();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		ObjectInputStream.GetField fields = in.readFields();
+		xLength = fields.get("xLength", 35);
+		yLength = fields.get("yLength", 35);
+		generation = fields.get("generation", 0L);
+		//boards saved before there were rules are all Conway
+		String ruleText = (String)fields.get("rule", null);
+		rule = ruleText == null ? Rule.CONWAY : Rule.parse(ruleText);
+		computeRowLayout();
+		buffers = new long[2][yLength * wordsPerRow];
+		selectBuffers();
+		bandHeight = DEFAULT_BAND_HEIGHT;
+		metrics = new BoardMetrics();
+
+		boolean[][] cells = (boolean[][])fields.get("board", null);
+		if(cells != null){
+			for(int y = 0; y < yLength; ++y){
+				for(int x = 0; x < xLength; ++x){
+					if(cells[y][x]){
+						board[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+					}
+				}
 			}
 		}
-		board = temp;
-		nextBoard = new boolean[this.yLength][this.xLength];
 	}
 }
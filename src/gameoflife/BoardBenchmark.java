@@ -0,0 +1,427 @@
+package gameoflife;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks for the hot paths of Board, over a range of board sizes and densities.
+ *
+ * Each benchmark gets a few warmup iterations and then a few measured ones of a fixed length, like JMH does, and
+ * the results are printed as a table.  They can also be written out as JSON to compare between releases.  The
+ * boards that get stepped are reseeded before every iteration, since after a few hundred generations a random
+ * board has settled into still lifes and blinkers, and tile skipping would be measured instead of the density.
+ *
+ * This is a plain class rather than a JMH benchmark because the project is built straight from its sources with
+ * no build tool, so there's nothing to pull JMH in with.  It doesn't fork a fresh JVM per benchmark the way JMH
+ * does, so run it with --only to keep one benchmark's JIT profile from skewing the next.
+ *
+ * Bytes allocated per operation are measured too, across every thread in the JVM so the pool's threads are
+ * counted, on JVMs that can report it.  Anything else running in the JVM at the time is counted as well, so
+ * small non-zero numbers are noise, but refreshBoard should come out at 0.  The parallel one only shows the few
+ * bytes some JDKs' ForkJoinPool allocates for the calling thread to wait on the generation.
+ *
+ * MultiStateBoard's two kernels are benchmarked against each other on Brian's Brain, and with --verify every
+ * board size and density is first stepped with both to check they agree before anything is timed.
+ *
+ * Usage: BoardBenchmark [--sizes 35,512,4096] [--densities 0.05,0.2,0.5] [--iterations N] [--iteration-ms N]
+ *        [--only name] [--json file] [--verify true]
+ *
+ * @author Folz
+ *
+ */
+public class BoardBenchmark {
+	private int[] sizes = {35, 512, 4096};
+	private double[] densities = {0.05, 0.2, 0.5};
+	private int warmupIterations = 3;
+	private int iterations = 5;
+	private long iterationNanos = 500000000L;
+	private String only;
+	private String jsonFile;
+	private boolean verify = false;
+	//number of operations in the last iteration
+	private long lastOperations;
+	//bytes allocated in the last iteration, not counting the reset, or -1 if the JVM can't tell
+	private long lastAllocated;
+	private final List<Result> results = new ArrayList<>();
+	private final ForkJoinPool pool = new ForkJoinPool();
+	private final Random seedRandom = new Random();
+
+	public static void main(String[] args) throws IOException {
+		BoardBenchmark benchmark = new BoardBenchmark();
+		benchmark.parseArguments(args);
+		benchmark.runAll();
+		if(benchmark.jsonFile != null){
+			benchmark.writeJson();
+		}
+	}
+
+	/**
+	 * Reads the command line arguments.
+	 *
+	 * @param args Command line arguments
+	 */
+	private void parseArguments(String[] args){
+		for(int i = 0; i + 1 < args.length; i += 2){
+			String value = args[i + 1];
+			switch(args[i]){
+			case "--sizes":
+				String[] sizeList = value.split(",");
+				sizes = new int[sizeList.length];
+				for(int j = 0; j < sizeList.length; ++j){
+					sizes[j] = Integer.parseInt(sizeList[j].trim());
+				}
+				break;
+			case "--densities":
+				String[] densityList = value.split(",");
+				densities = new double[densityList.length];
+				for(int j = 0; j < densityList.length; ++j){
+					densities[j] = Double.parseDouble(densityList[j].trim());
+				}
+				break;
+			case "--iterations":
+				iterations = Integer.parseInt(value);
+				if(iterations < 1){
+					throw new IllegalArgumentException("--iterations has to be at least 1");
+				}
+				break;
+			case "--iteration-ms":
+				iterationNanos = Long.parseLong(value) * 1000000L;
+				break;
+			case "--only":
+				only = value;
+				break;
+			case "--json":
+				jsonFile = value;
+				break;
+			case "--verify":
+				verify = Boolean.parseBoolean(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+
+	/**
+	 * Runs every benchmark at every size and density.
+	 */
+	private void runAll(){
+		if(verify){
+			for(int size : sizes){
+				for(double density : densities){
+					verifyKernels(size, density);
+				}
+			}
+		}
+		System.out.println(String.format("%-24s %6s %8s %16s %12s %10s", "benchmark", "size", "density", "ns/op", "error", "B/op"));
+		for(int size : sizes){
+			for(double density : densities){
+				Board board = randomBoard(size, density);
+				Random random = new Random(42);
+
+				run("refreshBoard", size, density, () -> seed(board, size, density), board::refreshBoard);
+
+				//a rule other than Conway, to check it steps about as fast through the general path
+				Board highLife = randomBoard(size, density);
+				highLife.setRule(Rule.parse("B36/S23"));
+				run("refreshBoardHighLife", size, density, () -> seed(highLife, size, density), highLife::refreshBoard);
+
+				Board parallel = randomBoard(size, density);
+				parallel.setThreadPool(pool);
+				run("refreshBoardParallel", size, density, () -> seed(parallel, size, density), parallel::refreshBoard);
+
+				//the neighbour counting kernel on its own, one row at a time without the tile bookkeeping
+				BoardSnapshot snapshot = new BoardSnapshot();
+				board.copyTo(snapshot);
+				final long[] cells = snapshot.getCells();
+				final int words = (size + 63) >>> 6;
+				final int[] row = {0};
+				final long[] sink = {0};
+				run("stepWord", size, density, () -> {
+					int y = row[0];
+					int above = (y == 0 ? size - 1 : y - 1) * words;
+					int below = (y == size - 1 ? 0 : y + 1) * words;
+					for(int w = 0; w < words; ++w){
+						sink[0] ^= Board.stepWord(cells, above, y * words, below, w, words, size, Rule.CONWAY);
+					}
+					row[0] = y == size - 1 ? 0 : y + 1;
+				});
+
+				run("setup", size, density, () -> board.setup(random));
+				run("impulse", size, density, () -> seed(board, size, density), () -> board.impulse(0.01, random));
+
+				Board resized = randomBoard(size, density);
+				final boolean[] grow = {true};
+				run("setBoardSize", size, density, () -> {
+					int newSize = grow[0] ? size + 1 : size;
+					resized.setBoardSize(newSize, newSize);
+					grow[0] = !grow[0];
+				});
+
+				//the multi-state kernels, lanes against the scalar fallback
+				Rule brain = Rule.parse("brian's brain");
+				MultiStateBoard lanes = randomMultiStateBoard(size, density, brain);
+				lanes.setLaneKernel(true);
+				run("refreshMultiStateLanes", size, density, () -> seed(lanes, size, density, brain), lanes::refreshBoard);
+				MultiStateBoard scalar = randomMultiStateBoard(size, density, brain);
+				scalar.setLaneKernel(false);
+				run("refreshMultiStateScalar", size, density, () -> seed(scalar, size, density, brain), scalar::refreshBoard);
+
+				Board saved = randomBoard(size, density);
+				run("saveLoad", size, density, () -> roundTrip(saved));
+
+				//the full copy refreshBoard used to make every generation, for comparison
+				final long[] copy = new long[cells.length];
+				run("copyBack", size, density, () -> System.arraycopy(cells, 0, copy, 0, cells.length));
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Runs one benchmark that doesn't need its board put back between iterations.
+	 */
+	private void run(String name, int size, double density, Runnable operation){
+		run(name, size, density, null, operation);
+	}
+
+	/**
+	 * Runs one benchmark, warmup iterations first, then records the mean and spread of the measured ones.
+	 *
+	 * @param name Name of the benchmark
+	 * @param size Width and height of the board
+	 * @param density Fraction of live cells the board started with
+	 * @param reset Puts the board back how it started before each iteration, untimed, or null
+	 * @param operation Operation to time
+	 */
+	private void run(String name, int size, double density, Runnable reset, Runnable operation){
+		if(only != null && !only.equals(name)){
+			return;
+		}
+		for(int i = 0; i < warmupIterations; ++i){
+			iteration(reset, operation);
+		}
+		double[] nanosPerOp = new double[iterations];
+		long operations = 0;
+		long allocated = 0;
+		for(int i = 0; i < iterations; ++i){
+			nanosPerOp[i] = iteration(reset, operation);
+			operations += lastOperations;
+			allocated = allocated < 0 || lastAllocated < 0 ? -1 : allocated + lastAllocated;
+		}
+		double bytesPerOp = allocated < 0 ? Double.NaN : (double)allocated / operations;
+
+		double mean = 0;
+		for(double value : nanosPerOp){
+			mean += value;
+		}
+		mean /= iterations;
+		double variance = 0;
+		for(double value : nanosPerOp){
+			variance += (value - mean) * (value - mean);
+		}
+		double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+
+		results.add(new Result(name, size, density, mean, error, bytesPerOp));
+		System.out.println(String.format(Locale.ROOT, "%-24s %6d %8.2f %16.1f %12.1f %10.1f", name, size, density, mean, error, bytesPerOp));
+	}
+
+	/**
+	 * Calls an operation over and over for one iteration's worth of time, after resetting the board if needed.
+	 *
+	 * @return Returns the average time per call in nanoseconds
+	 */
+	private double iteration(Runnable reset, Runnable operation){
+		if(reset != null){
+			reset.run();
+		}
+		long operations = 0;
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long elapsed;
+		do{
+			operation.run();
+			operations++;
+			elapsed = System.nanoTime() - start;
+		}while(elapsed < iterationNanos);
+		lastOperations = operations;
+		long allocatedAfter = allocatedBytes();
+		lastAllocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+		return (double)elapsed / operations;
+	}
+
+	/**
+	 * Gets the number of bytes allocated so far by every live thread, if the JVM can tell.
+	 *
+	 * @return Returns the bytes allocated, or -1 if the JVM can't measure it
+	 */
+	private static long allocatedBytes(){
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(!(threads instanceof com.sun.management.ThreadMXBean)){
+			return -1;
+		}
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)threads;
+		if(!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()){
+			return -1;
+		}
+		long total = 0;
+		for(long bytes : allocations.getThreadAllocatedBytes(threads.getAllThreadIds())){
+			if(bytes > 0){
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Saves a board and loads it back, the same way File -> Save As and Load do.
+	 */
+	private static Board roundTrip(Board board){
+		try{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(board);
+			oos.close();
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			return (Board)ois.readObject();
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}catch(ClassNotFoundException e){
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Makes a board with roughly the given fraction of its cells alive, always the same for the same arguments.
+	 */
+	private Board randomBoard(int size, double density){
+		Board board = new Board(size, size);
+		seed(board, size, density);
+		return board;
+	}
+
+	/**
+	 * Clears a board and fills it back in the same as randomBoard did.
+	 */
+	private void seed(Board board, int size, double density){
+		board.clearBoard();
+		seedRandom.setSeed(size * 31L + (long)(density * 1000));
+		for(int y = 0; y < size; ++y){
+			for(int x = 0; x < size; ++x){
+				if(seedRandom.nextDouble() < density){
+					board.setCell(x, y, true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes a multi-state board with roughly the given fraction of its cells in some state other than dead.
+	 */
+	private MultiStateBoard randomMultiStateBoard(int size, double density, Rule rule){
+		MultiStateBoard board = new MultiStateBoard(size, size, rule);
+		seed(board, size, density, rule);
+		return board;
+	}
+
+	/**
+	 * Clears a multi-state board and fills it back in the same as randomMultiStateBoard did.
+	 */
+	private void seed(MultiStateBoard board, int size, double density, Rule rule){
+		board.clearBoard();
+		seedRandom.setSeed(size * 31L + (long)(density * 1000));
+		for(int y = 0; y < size; ++y){
+			for(int x = 0; x < size; ++x){
+				if(seedRandom.nextDouble() < density){
+					board.setState(x, y, 1 + seedRandom.nextInt(rule.getStates() - 1));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Steps the same boards with both multi-state kernels, and with the lane kernel in parallel, for a few
+	 * generations of a few rules and checks every cell comes out the same.
+	 *
+	 * @throws IllegalStateException If the kernels disagree
+	 */
+	private void verifyKernels(int size, double density){
+		String[] rules = {"brian's brain", "wireworld", "star wars", "life"};
+		for(String ruleName : rules){
+			Rule rule = Rule.parse(ruleName);
+			MultiStateBoard scalar = randomMultiStateBoard(size, density, rule);
+			scalar.setLaneKernel(false);
+			MultiStateBoard lanes = randomMultiStateBoard(size, density, rule);
+			lanes.setLaneKernel(true);
+			MultiStateBoard parallel = randomMultiStateBoard(size, density, rule);
+			parallel.setLaneKernel(true);
+			parallel.setBandHeight(16);
+			parallel.setThreadPool(pool);
+			for(int generation = 0; generation < 20; ++generation){
+				scalar.refreshBoard();
+				lanes.refreshBoard();
+				parallel.refreshBoard();
+			}
+			for(int y = 0; y < size; ++y){
+				for(int x = 0; x < size; ++x){
+					if(lanes.getState(x, y) != scalar.getState(x, y) || parallel.getState(x, y) != scalar.getState(x, y)){
+						throw new IllegalStateException("Kernels disagree on " + rule + " at (" + x + ", " + y + "), size " + size + " density " + density);
+					}
+				}
+			}
+		}
+		System.out.println(String.format(Locale.ROOT, "verified multi-state kernels at size %d density %.2f", size, density));
+	}
+
+	/**
+	 * Writes every result out as a JSON array.
+	 */
+	private void writeJson() throws IOException{
+		try(Writer out = new FileWriter(jsonFile)){
+			out.write("[\n");
+			for(int i = 0; i < results.size(); ++i){
+				Result result = results.get(i);
+				out.write(String.format(Locale.ROOT,
+						"  {\"benchmark\": \"%s\", \"size\": %d, \"density\": %s, \"unit\": \"ns/op\", \"score\": %.3f, \"error\": %.3f, \"bytesPerOp\": %s}%s\n",
+						result.name, result.size, result.density, result.score, result.error,
+						Double.isNaN(result.bytesPerOp) ? "null" : String.format(Locale.ROOT, "%.1f", result.bytesPerOp),
+						i == results.size() - 1 ? "" : ","));
+			}
+			out.write("]\n");
+		}
+	}
+
+	/**
+	 * Outcome of one benchmark at one size and density.
+	 */
+	private static class Result{
+		final String name;
+		final int size;
+		final double density;
+		final double score;
+		final double error;
+		final double bytesPerOp;
+
+		Result(String name, int size, double density, double score, double error, double bytesPerOp){
+			this.name = name;
+			this.size = size;
+			this.density = density;
+			this.score = score;
+			this.error = error;
+			this.bytesPerOp = bytesPerOp;
+		}
+	}
+}
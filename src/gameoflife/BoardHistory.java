@@ -0,0 +1,470 @@
+package gameoflife;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the most recent generations of a board, so it can be wound back to any of them.
+ *
+ * Every so many generations the whole board is kept as a keyframe, and the generations in between are kept as
+ * the XOR of their cells with the generation before, which is all zeros apart from the cells that changed.  Both
+ * leave out the words that are 0 and Deflate the rest.  Deltas only look at the tiles the board says changed since
+ * the last one, so a mostly settled board costs next to nothing a generation.  Getting a generation back means
+ * starting from the keyframe before it and XORing in each delta up to it, or starting from the generation
+ * got back last time if that's closer, so scrubbing back and forth only goes over a delta or two each time.
+ *
+ * The generations are kept in a ring, and once they take up more than the memory budget the oldest keyframe goes,
+ * along with the deltas that depend on it.  Recording a generation that isn't newer than the newest one kept, like
+ * after winding back and stepping on from there, drops everything from that generation on first.
+ *
+ * Only the cells and generation are kept, not the rule.
+ *
+ * @author Folz
+ *
+ */
+public class BoardHistory {
+	public static final long DEFAULT_BUDGET = 64L << 20;
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+	//rough size of a frame apart from its data, counted against the budget too
+	private static final int FRAME_OVERHEAD = 64;
+
+	private final long budget;
+	private final int keyframeInterval;
+
+	//ring of frames, oldest first
+	private Frame[] frames = new Frame[16];
+	private int first = 0;
+	private int count = 0;
+	private long bytes = 0;
+	//set when the budget is all used by a single keyframe's worth, so the next frame starts a new one that can go later
+	private boolean forceKeyframe = false;
+
+	//cells of the newest frame, or of the one got back last, to XOR the next generation with
+	private long[] previous;
+	private long previousGeneration = -1;
+	private int previousX;
+	private int previousY;
+
+	//cells of the generation got back last time, to scrub on from
+	private long[] cursor;
+	private long cursorGeneration = -1;
+
+	private final BoardSnapshot capture = new BoardSnapshot();
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Inflater inflater = new Inflater();
+	private byte[] raw = new byte[0];
+	private byte[] compressed = new byte[0];
+	private long[] bitmap = new long[0];
+	private boolean[] tiles;
+	private int[] columns = new int[0];
+
+	public BoardHistory(){
+		this(DEFAULT_BUDGET, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * Constructor that takes how much to keep.
+	 *
+	 * @param budget Most bytes of compressed generations to keep
+	 * @param keyframeInterval Generations between keyframes, at least 1
+	 */
+	public BoardHistory(long budget, int keyframeInterval){
+		if(budget < 1 || keyframeInterval < 1){
+			throw new IllegalArgumentException("Budget and keyframe interval must be positive");
+		}
+		this.budget = budget;
+		this.keyframeInterval = keyframeInterval;
+	}
+
+	/**
+	 * Keeps the board's current generation.
+	 *
+	 * @param board Board to record
+	 */
+	public synchronized void record(Board board){
+		long generation = board.getGeneration();
+		//anything from this generation on belongs to a future that's been wound back from
+		while(count > 0 && get(count - 1).generation >= generation){
+			dropNewest();
+		}
+		if(cursorGeneration >= generation){
+			cursorGeneration = -1;
+		}
+
+		int xLength = board.getXLength();
+		int yLength = board.getYLength();
+		tiles = board.takeUnrecordedTiles(tiles);
+		//a delta only works out if the cells it's XORed with are the newest frame's
+		boolean keyframe = forceKeyframe || count == 0 || previous == null || previousGeneration != get(count - 1).generation
+						   || previousX != xLength || previousY != yLength
+						   || count - 1 - lastKeyframe(count - 1) + 1 >= keyframeInterval;
+		if(keyframe){
+			board.copyTo(capture);
+			long[] cells = capture.getCells();
+			add(new Frame(generation, xLength, yLength, true, compress(cells, yLength * capture.getWordsPerRow())));
+			keepPrevious(cells, generation, xLength, yLength);
+			forceKeyframe = false;
+		}else{
+			add(new Frame(generation, xLength, yLength, false, compressChanges(board.getLiveCells(), yLength, (xLength + 63) >>> 6)));
+			previousGeneration = generation;
+		}
+		trim();
+	}
+
+	/**
+	 * Winds a board back (or forward) to a generation that was kept.
+	 *
+	 * @param board Board to put the generation's cells into
+	 * @param generation Generation to get back
+	 * @return Returns false if that generation isn't kept
+	 */
+	public synchronized boolean restore(Board board, long generation){
+		int target = find(generation);
+		if(target < 0){
+			return false;
+		}
+		Frame frame = get(target);
+		int key = lastKeyframe(target);
+
+		//scrubbing from the last generation got back is cheaper if it's nearer and no keyframe is in the way
+		int from = cursor == null ? -1 : find(cursorGeneration);
+		if(from >= 0 && get(from).xLength == frame.xLength && get(from).yLength == frame.yLength){
+			if(from >= key && from <= target){
+				for(int i = from + 1; i <= target; ++i){
+					decompress(get(i), cursor);
+				}
+			}else if(from > target && nextKeyframe(target) > from && from - target < target - key){
+				//the XOR that made a generation out of the one before also makes the one before out of it
+				for(int i = from; i > target; --i){
+					decompress(get(i), cursor);
+				}
+			}else{
+				from = -1;
+			}
+		}else{
+			from = -1;
+		}
+		if(from < 0){
+			int words = frame.yLength * ((frame.xLength + 63) >>> 6);
+			if(cursor == null || cursor.length < words){
+				cursor = new long[words];
+			}
+			Arrays.fill(cursor, 0, words, 0L);
+			for(int i = key; i <= target; ++i){
+				decompress(get(i), cursor);
+			}
+		}
+		cursorGeneration = generation;
+
+		board.setCells(frame.xLength, frame.yLength, cursor, generation);
+		//stepping on from here drops the generations after this one, then carries on from it with a delta
+		keepPrevious(cursor, generation, frame.xLength, frame.yLength);
+		return true;
+	}
+
+	/**
+	 * Keeps a copy of the cells of the generation the next one recorded is likely to follow on from.
+	 */
+	private void keepPrevious(long[] cells, long generation, int xLength, int yLength){
+		int words = yLength * ((xLength + 63) >>> 6);
+		if(previous == null || previous.length < words){
+			previous = new long[words];
+		}
+		System.arraycopy(cells, 0, previous, 0, words);
+		previousGeneration = generation;
+		previousX = xLength;
+		previousY = yLength;
+	}
+
+	/**
+	 * Forgets every generation kept.
+	 */
+	public synchronized void clear(){
+		Arrays.fill(frames, null);
+		first = 0;
+		count = 0;
+		bytes = 0;
+		previous = null;
+		previousGeneration = -1;
+		cursor = null;
+		cursorGeneration = -1;
+	}
+
+	/**
+	 * Gets the oldest generation kept.
+	 *
+	 * @return Returns the generation, or -1 if none are kept
+	 */
+	public synchronized long getOldestGeneration(){
+		return count == 0 ? -1 : get(0).generation;
+	}
+
+	/**
+	 * Gets the newest generation kept.
+	 *
+	 * @return Returns the generation, or -1 if none are kept
+	 */
+	public synchronized long getNewestGeneration(){
+		return count == 0 ? -1 : get(count - 1).generation;
+	}
+
+	/**
+	 * Checks if a generation is kept.
+	 *
+	 * @param generation Generation to look for
+	 * @return Returns true if the generation can be got back
+	 */
+	public synchronized boolean contains(long generation){
+		return find(generation) >= 0;
+	}
+
+	public synchronized int size(){
+		return count;
+	}
+
+	/**
+	 * Gets the memory taken by the generations kept, compressed.
+	 *
+	 * @return Returns the number of bytes
+	 */
+	public synchronized long getBytes(){
+		return bytes;
+	}
+
+	private Frame get(int i){
+		return frames[(first + i) % frames.length];
+	}
+
+	/**
+	 * Finds the frame of a generation, which are in order.
+	 *
+	 * @return Returns its index from the oldest, or -1 if it isn't kept
+	 */
+	private int find(long generation){
+		int low = 0;
+		int high = count - 1;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			long midGeneration = get(mid).generation;
+			if(midGeneration < generation){
+				low = mid + 1;
+			}else if(midGeneration > generation){
+				high = mid - 1;
+			}else{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the last keyframe at or before a frame.  The oldest frame is always a keyframe.
+	 */
+	private int lastKeyframe(int i){
+		while(!get(i).keyframe){
+			i--;
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the first keyframe after a frame.
+	 *
+	 * @return Returns its index, or count if there isn't one
+	 */
+	private int nextKeyframe(int i){
+		for(++i; i < count && !get(i).keyframe; ++i){
+		}
+		return i;
+	}
+
+	private void add(Frame frame){
+		if(count == frames.length){
+			Frame[] bigger = new Frame[frames.length * 2];
+			for(int i = 0; i < count; ++i){
+				bigger[i] = get(i);
+			}
+			frames = bigger;
+			first = 0;
+		}
+		frames[(first + count) % frames.length] = frame;
+		count++;
+		bytes += frame.size();
+	}
+
+	private void dropNewest(){
+		int i = (first + count - 1) % frames.length;
+		bytes -= frames[i].size();
+		frames[i] = null;
+		count--;
+	}
+
+	/**
+	 * Drops the oldest keyframes and their deltas until the rest fit in the budget.  The newest keyframe's are
+	 * always kept, so there's something to wind back to.
+	 */
+	private void trim(){
+		while(bytes > budget){
+			int next = nextKeyframe(0);
+			if(next == count){
+				forceKeyframe = true;
+				return;
+			}
+			for(int i = 0; i < next; ++i){
+				bytes -= frames[first].size();
+				frames[first] = null;
+				first = (first + 1) % frames.length;
+			}
+			count -= next;
+		}
+	}
+
+	/**
+	 * Compresses a keyframe.  Only the words that aren't 0 are kept, after a bit per word saying which those are,
+	 * and unless that's about all there is they're Huffman coded without looking for repeats, which is faster and
+	 * smaller for cells that look about as random as a soup does.
+	 */
+	private byte[] compress(long[] cells, int words){
+		int bitmapWords = startFrame(words);
+		LongBuffer out = ByteBuffer.wrap(raw).asLongBuffer();
+		int length = bitmapWords;
+		for(int i = 0; i < words; ++i){
+			if(cells[i] != 0){
+				out.put(length++, cells[i]);
+				bitmap[i >>> 6] |= 1L << i;
+			}
+		}
+		return deflate(out, bitmapWords, length);
+	}
+
+	/**
+	 * Compresses a delta from the previous cells, laid out the same way as a keyframe, and brings the previous
+	 * cells up to date.  Only the tiles changed since the last frame are looked at, every other word is known to
+	 * be the same.
+	 */
+	private byte[] compressChanges(long[] cells, int yLength, int wordsPerRow){
+		int bitmapWords = startFrame(yLength * wordsPerRow);
+		if(columns.length < wordsPerRow){
+			columns = new int[wordsPerRow];
+		}
+		LongBuffer out = ByteBuffer.wrap(raw).asLongBuffer();
+		int length = bitmapWords;
+		for(int tileY = 0; tileY * Board.TILE_HEIGHT < yLength; ++tileY){
+			//the changed tiles' columns in this row of tiles, so the rows below only go over those
+			int changedColumns = 0;
+			for(int w = 0; w < wordsPerRow; ++w){
+				if(tiles[tileY * wordsPerRow + w]){
+					columns[changedColumns++] = w;
+				}
+			}
+			int toY = Math.min(yLength, (tileY + 1) * Board.TILE_HEIGHT);
+			for(int y = tileY * Board.TILE_HEIGHT; y < toY && changedColumns > 0; ++y){
+				for(int c = 0; c < changedColumns; ++c){
+					int i = y * wordsPerRow + columns[c];
+					if(cells[i] != previous[i]){
+						out.put(length++, cells[i] ^ previous[i]);
+						bitmap[i >>> 6] |= 1L << i;
+						previous[i] = cells[i];
+					}
+				}
+			}
+		}
+		return deflate(out, bitmapWords, length);
+	}
+
+	/**
+	 * Gets the buffers ready for a frame of so many words.
+	 *
+	 * @return Returns the number of words of bitmap at the start of the frame
+	 */
+	private int startFrame(int words){
+		int bitmapWords = (words + 63) >>> 6;
+		if(raw.length < (bitmapWords + words) * 8){
+			raw = new byte[(bitmapWords + words) * 8];
+		}
+		if(bitmap.length < bitmapWords){
+			bitmap = new long[bitmapWords];
+		}else{
+			Arrays.fill(bitmap, 0, bitmapWords, 0L);
+		}
+		return bitmapWords;
+	}
+
+	/**
+	 * Puts the bitmap in front of the words and Deflates the lot.
+	 */
+	private byte[] deflate(LongBuffer out, int bitmapWords, int length){
+		out.position(0);
+		out.put(bitmap, 0, bitmapWords);
+		//a frame that's mostly an empty bitmap is better off with repeats looked for
+		deflater.setStrategy(length < bitmapWords * 2 ? Deflater.DEFAULT_STRATEGY : Deflater.HUFFMAN_ONLY);
+		deflater.reset();
+		deflater.setInput(raw, 0, length * 8);
+		deflater.finish();
+		int compressedLength = 0;
+		while(!deflater.finished()){
+			if(compressedLength == compressed.length){
+				compressed = Arrays.copyOf(compressed, Math.max(1024, compressed.length * 2));
+			}
+			compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+		}
+		return Arrays.copyOf(compressed, compressedLength);
+	}
+
+	/**
+	 * Decompresses a frame and XORs it into cells.  For a keyframe the cells should start out all 0.
+	 */
+	private void decompress(Frame frame, long[] cells){
+		int words = frame.yLength * ((frame.xLength + 63) >>> 6);
+		int bitmapWords = (words + 63) >>> 6;
+		if(raw.length < (bitmapWords + words) * 8){
+			raw = new byte[(bitmapWords + words) * 8];
+		}
+		inflater.reset();
+		inflater.setInput(frame.data);
+		try{
+			int length = 0;
+			while(!inflater.finished()){
+				length += inflater.inflate(raw, length, raw.length - length);
+			}
+		}catch(DataFormatException e){
+			//only ever made by compress, so this would be a bug
+			throw new IllegalStateException(e);
+		}
+		LongBuffer in = ByteBuffer.wrap(raw).asLongBuffer();
+		int next = bitmapWords;
+		for(int b = 0; b < bitmapWords; ++b){
+			//straight to each word that isn't 0
+			for(long bitmap = in.get(b); bitmap != 0; bitmap &= bitmap - 1){
+				cells[(b << 6) + Long.numberOfTrailingZeros(bitmap)] ^= in.get(next++);
+			}
+		}
+	}
+
+	/**
+	 * One generation kept, as a keyframe or a delta from the generation before.
+	 */
+	private static final class Frame{
+		private final long generation;
+		private final int xLength;
+		private final int yLength;
+		private final boolean keyframe;
+		private final byte[] data;
+
+		Frame(long generation, int xLength, int yLength, boolean keyframe, byte[] data){
+			this.generation = generation;
+			this.xLength = xLength;
+			this.yLength = yLength;
+			this.keyframe = keyframe;
+			this.data = data;
+		}
+
+		long size(){
+			return data.length + FRAME_OVERHEAD;
+		}
+	}
+}
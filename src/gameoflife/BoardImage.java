@@ -0,0 +1,263 @@
+package gameoflife;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Turns images into boards and boards into images.
+ *
+ * Importing follows the old plan for Import Image: every pixel close enough to the live colour counts as alive,
+ * then the image is resampled to the size of the board, each cell being alive if at least half the pixels it
+ * covers are.  The rows of the board are worked out in bands, in parallel on a pool if there is one, and written
+ * straight into the board a row at a time.
+ *
+ * Exporting draws a snapshot of a board as a square of pixels per cell, from a palette of a colour per state.
+ *
+ * @author Folz
+ *
+ */
+public final class BoardImage {
+	//how close a pixel has to be to the live colour to count as alive, as a fraction of the furthest apart two colours can be
+	public static final double DEFAULT_TOLERANCE = .25;
+	//rows of the board worked out by each task when importing in parallel
+	private static final int BAND_HEIGHT = 64;
+	private static final double MAX_DISTANCE = Math.sqrt(3 * 255 * 255);
+
+	private BoardImage(){
+	}
+
+	/**
+	 * Reads an image file, in any format ImageIO knows.
+	 *
+	 * @param file File to read
+	 * @return Returns the image
+	 */
+	public static BufferedImage read(File file) throws IOException{
+		BufferedImage image = ImageIO.read(file);
+		if(image == null){
+			throw new IOException("Not an image that can be read: " + file.getName());
+		}
+		return image;
+	}
+
+	/**
+	 * Replaces the cells of a board with an image, resampled to the board's size.
+	 *
+	 * @param image Image to import
+	 * @param board Board to import it into
+	 * @param liveColor Colour of live cells in the image, as ARGB
+	 * @param tolerance How far a pixel's colour can be from the live colour and still be alive, between 0 and 1
+	 * @param pool Pool to work out the rows on, or null to do it on the calling thread
+	 */
+	public static void importImage(BufferedImage image, LifeBoard board, int liveColor, double tolerance, ForkJoinPool pool){
+		if(board instanceof Board){
+			//the rows are written from more than one thread, so any cells shared with a copy are copied first
+			((Board)board).ownBuffers();
+		}
+		//only the dense and multi-state boards can have different rows written at the same time
+		if(pool != null && (board instanceof Board || board instanceof MultiStateBoard)){
+			pool.invoke(new ImportTask(image, board, liveColor, tolerance, 0, board.getYLength()));
+		}else{
+			//not through the task, which would fork its halves onto the common pool
+			importRows(image, board, liveColor, tolerance, 0, board.getYLength());
+		}
+	}
+
+	/**
+	 * Task that imports a band of rows of the board, splitting itself in half until the bands are no taller than
+	 * BAND_HEIGHT.
+	 */
+	private static class ImportTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		private final BufferedImage image;
+		private final LifeBoard board;
+		private final int liveColor;
+		private final double tolerance;
+		private final int fromY;
+		private final int toY;
+
+		ImportTask(BufferedImage image, LifeBoard board, int liveColor, double tolerance, int fromY, int toY){
+			this.image = image;
+			this.board = board;
+			this.liveColor = liveColor;
+			this.tolerance = tolerance;
+			this.fromY = fromY;
+			this.toY = toY;
+		}
+
+		@Override
+		protected void compute(){
+			if(toY - fromY <= BAND_HEIGHT){
+				importRows(image, board, liveColor, tolerance, fromY, toY);
+			}else{
+				int mid = fromY + (toY - fromY) / 2;
+				invokeAll(new ImportTask(image, board, liveColor, tolerance, fromY, mid),
+						  new ImportTask(image, board, liveColor, tolerance, mid, toY));
+			}
+		}
+	}
+
+	/**
+	 * Imports some rows of the board.  Each cell covers a box of pixels, at least one, and the live pixels in each
+	 * row of the box are counted from a running total along the image row.
+	 */
+	private static void importRows(BufferedImage image, LifeBoard board, int liveColor, double tolerance, int fromY, int toY){
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int xLength = board.getXLength();
+		int yLength = board.getYLength();
+		//compared squared, to save a square root a pixel
+		double maxDistance = tolerance * MAX_DISTANCE * tolerance * MAX_DISTANCE;
+
+		//first pixel column of each cell column, and one past its last
+		int[] columnStart = new int[xLength];
+		int[] columnEnd = new int[xLength];
+		for(int x = 0; x < xLength; ++x){
+			columnStart[x] = (int)((long)x * width / xLength);
+			columnEnd[x] = Math.max(columnStart[x] + 1, (int)((long)(x + 1) * width / xLength));
+		}
+
+		int[] pixels = new int[width];
+		int[] liveBefore = new int[width + 1];
+		int[] liveCounts = new int[xLength];
+		long[] words = new long[(xLength + 63) >>> 6];
+		byte[] states = board instanceof MultiStateBoard ? new byte[xLength] : null;
+		for(int y = fromY; y < toY; ++y){
+			int rowStart = (int)((long)y * height / yLength);
+			int rowEnd = Math.max(rowStart + 1, (int)((long)(y + 1) * height / yLength));
+			Arrays.fill(liveCounts, 0);
+			for(int sourceY = rowStart; sourceY < rowEnd; ++sourceY){
+				image.getRGB(0, sourceY, width, 1, pixels, 0, width);
+				for(int i = 0; i < width; ++i){
+					liveBefore[i + 1] = liveBefore[i] + (distanceSquared(pixels[i], liveColor) <= maxDistance ? 1 : 0);
+				}
+				for(int x = 0; x < xLength; ++x){
+					liveCounts[x] += liveBefore[columnEnd[x]] - liveBefore[columnStart[x]];
+				}
+			}
+
+			Arrays.fill(words, 0L);
+			for(int x = 0; x < xLength; ++x){
+				int area = (columnEnd[x] - columnStart[x]) * (rowEnd - rowStart);
+				if(liveCounts[x] * 2 >= area){
+					words[x >>> 6] |= 1L << x;
+				}
+			}
+			writeRow(board, y, words, states);
+		}
+	}
+
+	/**
+	 * Writes a packed row of cells into a board, as directly as the kind of board allows.
+	 */
+	private static void writeRow(LifeBoard board, int y, long[] words, byte[] states){
+		if(board instanceof Board){
+			((Board)board).copyRowFrom(y, words);
+		}else if(board instanceof MultiStateBoard){
+			for(int x = 0; x < states.length; ++x){
+				states[x] = (byte)((words[x >>> 6] >>> x) & 1);
+			}
+			((MultiStateBoard)board).copyStatesFrom(y, states);
+		}else{
+			for(int x = 0; x < board.getXLength(); ++x){
+				board.setCell(x, y, (words[x >>> 6] & (1L << x)) != 0);
+			}
+		}
+	}
+
+	/**
+	 * Works out the square of how far apart two colours are, as a straight line through RGB.
+	 */
+	private static int distanceSquared(int a, int b){
+		int red = ((a >> 16) & 0xFF) - ((b >> 16) & 0xFF);
+		int green = ((a >> 8) & 0xFF) - ((b >> 8) & 0xFF);
+		int blue = (a & 0xFF) - (b & 0xFF);
+		return red * red + green * green + blue * blue;
+	}
+
+	/**
+	 * Draws a snapshot of a board as an image.
+	 *
+	 * @param snapshot Snapshot to draw
+	 * @param palette Colour of each state as ARGB, at least as many as the snapshot has states
+	 * @param cellSize Width and height of each cell in pixels
+	 * @param image Image to draw into if it's the right size, or null
+	 * @return Returns the image drawn, which is a new one unless the one given was the right size
+	 */
+	public static BufferedImage toImage(BoardSnapshot snapshot, int[] palette, int cellSize, BufferedImage image){
+		if(!fits(snapshot.getXLength(), snapshot.getYLength(), cellSize)){
+			throw new IllegalArgumentException("Image would be too big");
+		}
+		int width = snapshot.getXLength() * cellSize;
+		int height = snapshot.getYLength() * cellSize;
+		if(image == null || image.getWidth() != width || image.getHeight() != height || image.getType() != BufferedImage.TYPE_INT_ARGB){
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		}
+
+		//drawn straight into the image's own pixels
+		int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		for(int y = 0; y < snapshot.getYLength(); ++y){
+			int rowStart = y * cellSize * width;
+			int p = rowStart;
+			for(int x = 0; x < snapshot.getXLength(); ++x){
+				int color = palette[snapshot.getState(x, y)];
+				for(int i = 0; i < cellSize; ++i){
+					pixels[p++] = color;
+				}
+			}
+			for(int i = 1; i < cellSize; ++i){
+				System.arraycopy(pixels, rowStart, pixels, rowStart + i * width, width);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Checks an image of a board can be made, which needs its pixels to fit in one array.
+	 *
+	 * @param xLength Size of the board in the X direction
+	 * @param yLength Size of the board in the Y direction
+	 * @param cellSize Width and height of each cell in pixels
+	 * @return Returns true if the image isn't too big
+	 */
+	public static boolean fits(int xLength, int yLength, int cellSize){
+		long width = (long)xLength * cellSize;
+		long height = (long)yLength * cellSize;
+		return width <= Integer.MAX_VALUE && height <= Integer.MAX_VALUE && width * height <= Integer.MAX_VALUE - 8;
+	}
+
+	/**
+	 * Makes a palette going from white for state 1 to black for dead, the default when nothing else is given.
+	 *
+	 * @param stateCount Number of states
+	 * @return Returns a colour for each state, as ARGB
+	 */
+	public static int[] defaultPalette(int stateCount){
+		int[] palette = new int[stateCount];
+		palette[0] = 0xFF000000;
+		for(int state = 1; state < stateCount; ++state){
+			int level = 255 - (state - 1) * 200 / Math.max(1, stateCount - 2);
+			palette[state] = 0xFF000000 | level << 16 | level << 8 | level;
+		}
+		return palette;
+	}
+
+	/**
+	 * Writes an image out as a PNG.
+	 *
+	 * @param image Image to write
+	 * @param file File to write it to
+	 */
+	public static void writePng(BufferedImage image, File file) throws IOException{
+		if(!ImageIO.write(image, "png", file)){
+			throw new IOException("No PNG writer");
+		}
+	}
+}
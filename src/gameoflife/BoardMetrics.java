@@ -0,0 +1,219 @@
+package gameoflife;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters for a running board: its population, how many cells were born and died in the last generation, how
+ * long generations take to step, and how many are being stepped a second.
+ *
+ * The board records each generation as it's stepped, from counts it keeps while stepping anyway, so nothing has to
+ * go over the whole grid again.  Only the thread stepping the board writes to these, and anything can read them,
+ * from the same thread or another one or over JMX.  Reads from another thread can see one generation's births with
+ * the next one's deaths, which is fine for watching a simulation.
+ *
+ * Step latencies go into a histogram of power of two buckets, bucket i counting steps that took from 2^i up to
+ * 2^(i+1) nanoseconds, so percentiles are only good to within a factor of two.
+ *
+ * @author Folz
+ *
+ */
+public final class BoardMetrics implements BoardMetricsMBean {
+	private static final int BUCKETS = 64;
+	//weight of the newest step in the smoothed time between steps
+	private static final double RATE_SMOOTHING = 0.05;
+
+	private volatile long generation;
+	private volatile long population;
+	private volatile long births;
+	private volatile long deaths;
+	private volatile long steps;
+	private volatile long totalStepNanos;
+	private volatile double smoothedIntervalNanos;
+	private long lastStepEnd;
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	//set by resetLatencies from any thread, and carried out by the stepping thread before its next step is counted
+	private volatile boolean resetRequested = false;
+
+	/**
+	 * Records a generation that has just been stepped.  Only the thread stepping the board should call this.
+	 *
+	 * @param generation Generation the board is on now
+	 * @param population Number of live cells now
+	 * @param births Number of cells that came alive in the step
+	 * @param deaths Number of cells that died in the step
+	 * @param stepNanos Time the step took, in nanoseconds
+	 * @param now System.nanoTime() at the end of the step
+	 */
+	void recordStep(long generation, long population, long births, long deaths, long stepNanos, long now){
+		this.generation = generation;
+		this.population = population;
+		this.births = births;
+		this.deaths = deaths;
+		if(resetRequested){
+			resetRequested = false;
+			for(int bucket = 0; bucket < BUCKETS; ++bucket){
+				histogram.lazySet(bucket, 0);
+			}
+			steps = 0;
+			totalStepNanos = 0;
+		}
+		//single writer, so these don't need to be atomic, only visible
+		steps = steps + 1;
+		totalStepNanos = totalStepNanos + stepNanos;
+		int bucket = 63 - Long.numberOfLeadingZeros(Math.max(stepNanos, 1));
+		histogram.lazySet(bucket, histogram.get(bucket) + 1);
+
+		if(lastStepEnd != 0){
+			double interval = now - lastStepEnd;
+			smoothedIntervalNanos = smoothedIntervalNanos == 0 ? interval : smoothedIntervalNanos + RATE_SMOOTHING * (interval - smoothedIntervalNanos);
+		}
+		lastStepEnd = now;
+	}
+
+	/**
+	 * Updates the population after the board was changed by something other than stepping.
+	 *
+	 * @param population Number of live cells now
+	 */
+	void recordPopulation(long population){
+		this.population = population;
+	}
+
+	@Override
+	public long getGeneration(){
+		return generation;
+	}
+
+	@Override
+	public long getPopulation(){
+		return population;
+	}
+
+	@Override
+	public long getBirths(){
+		return births;
+	}
+
+	@Override
+	public long getDeaths(){
+		return deaths;
+	}
+
+	/**
+	 * Gets the rate generations are being stepped at, smoothed over roughly the last twenty, including any time
+	 * spent waiting between them.
+	 */
+	@Override
+	public double getGenerationsPerSecond(){
+		double interval = smoothedIntervalNanos;
+		return interval > 0 ? 1e9 / interval : 0;
+	}
+
+	@Override
+	public double getMeanStepNanos(){
+		long count = steps;
+		return count > 0 ? (double)totalStepNanos / count : 0;
+	}
+
+	@Override
+	public long getMedianStepNanos(){
+		return getStepNanosPercentile(0.5);
+	}
+
+	@Override
+	public long getP99StepNanos(){
+		return getStepNanosPercentile(0.99);
+	}
+
+	/**
+	 * Gets a percentile of the step latencies, as the top of the histogram bucket it falls in.
+	 *
+	 * @param fraction Percentile to get, between 0 and 1
+	 * @return Returns the latency in nanoseconds, or 0 if nothing has been stepped
+	 */
+	public long getStepNanosPercentile(double fraction){
+		long[] counts = getStepLatencyHistogram();
+		long total = 0;
+		for(long count : counts){
+			total += count;
+		}
+		if(total == 0){
+			return 0;
+		}
+		long wanted = (long)Math.ceil(fraction * total);
+		long seen = 0;
+		for(int bucket = 0; bucket < BUCKETS; ++bucket){
+			seen += counts[bucket];
+			if(seen >= Math.max(wanted, 1)){
+				return bucket >= 62 ? Long.MAX_VALUE : 1L << (bucket + 1);
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Gets a copy of the step latency histogram.
+	 *
+	 * @return Returns the count of steps in each bucket, bucket i being from 2^i up to 2^(i+1) nanoseconds
+	 */
+	@Override
+	public long[] getStepLatencyHistogram(){
+		long[] counts = new long[BUCKETS];
+		for(int bucket = 0; bucket < BUCKETS; ++bucket){
+			counts[bucket] = histogram.get(bucket);
+		}
+		return counts;
+	}
+
+	/**
+	 * Asks for the step latencies to be forgotten.  Clearing them here would race with the stepping thread adding
+	 * to them, so it's left to that thread, and the old latencies can still be read until the next step.
+	 */
+	@Override
+	public void resetLatencies(){
+		resetRequested = true;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server, as gameoflife:type=BoardMetrics,name=(name).
+	 *
+	 * @param name Name to tell this board apart from any others
+	 * @return Returns the name it was registered under, for unregistering it later
+	 * @throws JMException If it couldn't be registered, like if the name is taken
+	 */
+	public ObjectName register(String name) throws JMException{
+		ObjectName objectName = new ObjectName("gameoflife:type=BoardMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * Gets the column names for toCsv, as a CSV line.
+	 */
+	public static String csvHeader(){
+		return "generation,population,births,deaths,generations_per_second,mean_step_nanos,median_step_nanos,p99_step_nanos";
+	}
+
+	/**
+	 * Gets the current values as a CSV line, in the order of csvHeader.
+	 */
+	public String toCsv(){
+		return String.format(Locale.ROOT, "%d,%d,%d,%d,%.3f,%.1f,%d,%d", getGeneration(), getPopulation(), getBirths(),
+							 getDeaths(), getGenerationsPerSecond(), getMeanStepNanos(), getMedianStepNanos(), getP99StepNanos());
+	}
+
+	/**
+	 * Gets the current values as a JSON object on one line.
+	 */
+	public String toJson(){
+		return String.format(Locale.ROOT, "{\"generation\": %d, \"population\": %d, \"births\": %d, \"deaths\": %d, "
+							 + "\"generationsPerSecond\": %.3f, \"meanStepNanos\": %.1f, \"medianStepNanos\": %d, \"p99StepNanos\": %d}",
+							 getGeneration(), getPopulation(), getBirths(), getDeaths(), getGenerationsPerSecond(),
+							 getMeanStepNanos(), getMedianStepNanos(), getP99StepNanos());
+	}
+}
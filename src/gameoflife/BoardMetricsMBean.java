@@ -0,0 +1,33 @@
+package gameoflife;
+
+/**
+ * Management interface for BoardMetrics, so a running board can be watched over JMX with jconsole or VisualVM.
+ *
+ * @author Folz
+ *
+ */
+public interface BoardMetricsMBean {
+
+	long getGeneration();
+
+	long getPopulation();
+
+	long getBirths();
+
+	long getDeaths();
+
+	double getGenerationsPerSecond();
+
+	double getMeanStepNanos();
+
+	long getMedianStepNanos();
+
+	long getP99StepNanos();
+
+	long[] getStepLatencyHistogram();
+
+	/**
+	 * Forgets the step latencies recorded so far, to start a fresh measurement.
+	 */
+	void resetLatencies();
+}
@@ -0,0 +1,134 @@
+package gameoflife;
+
+/**
+ * Copy of a board's cells at one generation, bit-packed the same way Board stores them.  Snapshots are handed
+ * from the thread stepping a board to the one drawing it, and nothing outside the package can change one.
+ * 
+ * Boards with more than two states also copy in the state of every cell, a byte each, and the packed cells are
+ * then the ones in state 1.
+ * 
+ * @author Folz
+ *
+ */
+public final class BoardSnapshot {
+	private int xLength;
+	private int yLength;
+	private int wordsPerRow;
+	private long generation;
+	private long[] cells = new long[0];
+	private int stateCount = 2;
+	private byte[] states = new byte[0];
+	
+	/**
+	 * Gets the snapshot ready to be filled with a board of the given size.  The cell array is only reallocated
+	 * if it is too small.
+	 * 
+	 * @param xLength Size of the board in the X direction
+	 * @param yLength Size of the board in the Y direction
+	 * @param generation Generation being copied
+	 * @return Returns the array to copy the packed cells into, yLength rows of getWordsPerRow() words
+	 */
+	long[] reset(int xLength, int yLength, long generation){
+		this.xLength = xLength;
+		this.yLength = yLength;
+		this.generation = generation;
+		wordsPerRow = (xLength + 63) >>> 6;
+		stateCount = 2;
+		if(cells.length < yLength * wordsPerRow){
+			cells = new long[yLength * wordsPerRow];
+		}
+		return cells;
+	}
+	
+	/**
+	 * Gets the snapshot ready for the states of a board with more than two, after reset has been called for its
+	 * size.  The state array is only reallocated if it is too small.
+	 * 
+	 * @param stateCount Number of states the board's rule has
+	 * @return Returns the array to copy the states into, indexed [y * xLength + x]
+	 */
+	byte[] resetStates(int stateCount){
+		this.stateCount = stateCount;
+		if(states.length < xLength * yLength){
+			states = new byte[xLength * yLength];
+		}
+		return states;
+	}
+	
+	/**
+	 * Checks if a cell was alive.
+	 * 
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @return Returns true if the cell was alive
+	 */
+	public boolean getCell(int x, int y){
+		return (cells[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+	}
+	
+	/**
+	 * Gets the state a cell was in.  Boards with two states only have 0 for dead and 1 for alive.
+	 * 
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @return Returns the state of the cell
+	 */
+	public int getState(int x, int y){
+		if(stateCount == 2){
+			return getCell(x, y) ? 1 : 0;
+		}
+		return states[y * xLength + x] & 0xFF;
+	}
+	
+	/**
+	 * Changes a cell in the snapshot, for drawing an edit before the board has been stepped with it.
+	 * 
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @param state New state of the cell, where only 1 is alive
+	 */
+	void setState(int x, int y, int state){
+		int index = y * wordsPerRow + (x >>> 6);
+		if(state == 1){
+			cells[index] |= 1L << x;
+		}else{
+			cells[index] &= ~(1L << x);
+		}
+		if(stateCount > 2){
+			states[y * xLength + x] = (byte)state;
+		}
+	}
+	
+	/**
+	 * Gets the number of states the board's cells could be in.
+	 * 
+	 * @return Returns the number of states, 2 for a board that's only alive or dead
+	 */
+	public int getStateCount(){
+		return stateCount;
+	}
+	
+	public int getXLength(){
+		return xLength;
+	}
+	
+	public int getYLength(){
+		return yLength;
+	}
+	
+	public long getGeneration(){
+		return generation;
+	}
+	
+	int getWordsPerRow(){
+		return wordsPerRow;
+	}
+	
+	long[] getCells(){
+		return cells;
+	}
+	
+	byte[] getStates(){
+		return states;
+	}
+}
@@ -0,0 +1,318 @@
+package gameoflife;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Pane;
+
+/**
+ * Draws a board into a single image, one square of pixels per cell with grid lines between them, instead of
+ * keeping a node per cell.  Each frame is written straight into an int[] of ARGB pixels and handed to the image
+ * in one go, and the pixel buffer is only reallocated when the board or the view changes size.
+ *
+ * Boards with more than two states are drawn from a palette, where state 1 is the live colour and the states after
+ * it fade towards the dead colour, unless they've been given a colour of their own.
+ *
+ * Cells edited by hand can be drawn on their own, so painting with the mouse only touches the pixels of the cells
+ * painted rather than the whole board.
+ *
+ * @author Folz
+ *
+ */
+public class BoardView extends Pane{
+	private static final PixelFormat<IntBuffer> PIXEL_FORMAT = PixelFormat.getIntArgbInstance();
+
+	private final ImageView imageView = new ImageView();
+	private WritableImage image;
+	private int[] pixels = new int[0];
+	private int imageWidth, imageHeight;
+	private int cellSize = 1;
+	private int gap = 0;
+
+	private BoardSnapshot snapshot;
+	private int liveColor = 0xFF008000;
+	private int deadColor = 0xFF000000;
+	private int gridColor = 0xFF808080;
+	//colours picked for particular states, 0 where the state just fades
+	private final int[] stateColors = new int[256];
+	private int[] palette = new int[0];
+
+	public BoardView(){
+		imageView.setSmooth(false);
+		getChildren().add(imageView);
+	}
+
+	/**
+	 * Draws a snapshot of a board, resizing the image first if the board's size changed.  The snapshot is kept
+	 * for redrawing, so it mustn't be reused until another one has been drawn.
+	 *
+	 * @param snapshot Snapshot to draw
+	 */
+	public void draw(BoardSnapshot snapshot){
+		this.snapshot = snapshot;
+		if(!fitToBoard()){
+			return;
+		}
+
+		int xLength = snapshot.getXLength();
+		int yLength = snapshot.getYLength();
+		int wordsPerRow = snapshot.getWordsPerRow();
+		long[] cells = snapshot.getCells();
+		int stateCount = snapshot.getStateCount();
+		byte[] states = snapshot.getStates();
+		if(stateCount > 2){
+			makePalette(stateCount);
+		}
+		int pitch = cellSize + gap;
+		for(int y = 0; y < yLength; ++y){
+			int rowStart = (gap + y * pitch) * imageWidth;
+			int p = rowStart;
+			for(int i = 0; i < gap; ++i){
+				pixels[p++] = gridColor;
+			}
+			for(int x = 0; x < xLength; ++x){
+				int color;
+				if(stateCount > 2){
+					color = palette[states[y * xLength + x] & 0xFF];
+				}else{
+					color = (cells[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0 ? liveColor : deadColor;
+				}
+				for(int i = 0; i < cellSize; ++i){
+					pixels[p++] = color;
+				}
+				for(int i = 0; i < gap; ++i){
+					pixels[p++] = gridColor;
+				}
+			}
+			//every pixel row of a cell row is the same
+			for(int i = 1; i < cellSize; ++i){
+				System.arraycopy(pixels, rowStart, pixels, rowStart + i * imageWidth, imageWidth);
+			}
+		}
+		image.getPixelWriter().setPixels(0, 0, imageWidth, imageHeight, PIXEL_FORMAT, pixels, 0, imageWidth);
+	}
+
+	/**
+	 * Draws a few cells in a new state, without redrawing the rest of the board.  The snapshot being shown is
+	 * changed to match, so they stay drawn until the board catches up with them.
+	 *
+	 * @param cells X and Y of each cell, one after the other
+	 * @param count Number of cells
+	 * @param state State to draw them in
+	 */
+	public void drawCells(int[] cells, int count, int state){
+		if(snapshot == null || image == null){
+			return;
+		}
+		int stateCount = snapshot.getStateCount();
+		if(state >= stateCount){
+			return;
+		}
+		int color;
+		if(stateCount > 2){
+			makePalette(stateCount);
+			color = palette[state];
+		}else{
+			color = state == 1 ? liveColor : deadColor;
+		}
+
+		//only the pixels inside the box around the cells get handed over to the image
+		int pitch = cellSize + gap;
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+		for(int i = 0; i < count; ++i){
+			int x = cells[2 * i];
+			int y = cells[2 * i + 1];
+			if(x < 0 || y < 0 || x >= snapshot.getXLength() || y >= snapshot.getYLength()){
+				continue;
+			}
+			snapshot.setState(x, y, state);
+			int left = gap + x * pitch;
+			int top = gap + y * pitch;
+			for(int row = top; row < top + cellSize; ++row){
+				Arrays.fill(pixels, row * imageWidth + left, row * imageWidth + left + cellSize, color);
+			}
+			minX = Math.min(minX, left);
+			minY = Math.min(minY, top);
+			maxX = Math.max(maxX, left + cellSize);
+			maxY = Math.max(maxY, top + cellSize);
+		}
+		if(maxX < 0){
+			return;
+		}
+		image.getPixelWriter().setPixels(minX, minY, maxX - minX, maxY - minY, PIXEL_FORMAT, pixels, minY * imageWidth + minX, imageWidth);
+	}
+
+	/**
+	 * Gets the state a cell is drawn in.
+	 *
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @return Returns the state, or 0 if nothing has been drawn yet
+	 */
+	public int getState(int x, int y){
+		if(snapshot == null || x >= snapshot.getXLength() || y >= snapshot.getYLength()){
+			return 0;
+		}
+		return snapshot.getState(x, y);
+	}
+
+	/**
+	 * Gets the number of states the board being drawn has.
+	 *
+	 * @return Returns the number of states
+	 */
+	public int getStateCount(){
+		return snapshot == null ? 2 : snapshot.getStateCount();
+	}
+
+	/**
+	 * Redraws the last snapshot drawn, if there was one.
+	 */
+	public void redraw(){
+		if(snapshot != null){
+			draw(snapshot);
+		}
+	}
+
+	/**
+	 * Works out which cell of the board is under a point in the view.
+	 *
+	 * @param x X coordinate in the view
+	 * @param y Y coordinate in the view
+	 * @return Returns {x, y} of the cell, or null if the point isn't on a cell
+	 */
+	public int[] cellAt(double x, double y){
+		if(snapshot == null){
+			return null;
+		}
+		int pitch = cellSize + gap;
+		int cellX = (int)Math.floor((x - imageView.getLayoutX() - gap) / pitch);
+		int cellY = (int)Math.floor((y - imageView.getLayoutY() - gap) / pitch);
+		if(cellX < 0 || cellY < 0 || cellX >= snapshot.getXLength() || cellY >= snapshot.getYLength()){
+			return null;
+		}
+		return new int[]{cellX, cellY};
+	}
+
+	public int getLiveColor(){
+		return liveColor;
+	}
+
+	public void setLiveColor(int argb){
+		liveColor = argb;
+		redraw();
+	}
+
+	public void setDeadColor(int argb){
+		deadColor = argb;
+		redraw();
+	}
+
+	/**
+	 * Sets the colour of one state of a multi-state board.  States 0 and 1 are the dead and live colours.
+	 *
+	 * @param state State to colour, 2 or more
+	 * @param argb Colour to draw it in, or 0 to go back to fading it between the live and dead colours
+	 */
+	public void setStateColor(int state, int argb){
+		stateColors[state] = argb;
+		redraw();
+	}
+
+	/**
+	 * Gets the colour a state of a multi-state board is drawn in.
+	 *
+	 * @param state State to look up
+	 * @param stateCount Number of states the board has
+	 * @return Returns the colour as ARGB
+	 */
+	public int getStateColor(int state, int stateCount){
+		makePalette(stateCount);
+		return palette[state];
+	}
+
+	/**
+	 * Works out the colour of every state.  The states after 1 that haven't got a colour of their own go from the
+	 * live colour towards the dead one, without ever quite getting there so they can still be told apart from it.
+	 */
+	private void makePalette(int stateCount){
+		if(palette.length != stateCount){
+			palette = new int[stateCount];
+		}
+		palette[0] = deadColor;
+		palette[1] = liveColor;
+		for(int state = 2; state < stateCount; ++state){
+			if(stateColors[state] != 0){
+				palette[state] = stateColors[state];
+				continue;
+			}
+			double fade = (state - 1) / (double)(stateCount - 1);
+			int color = 0xFF000000;
+			for(int shift = 0; shift < 24; shift += 8){
+				int live = (liveColor >> shift) & 0xFF;
+				int dead = (deadColor >> shift) & 0xFF;
+				color |= (int)Math.round(live + (dead - live) * fade) << shift;
+			}
+			palette[state] = color;
+		}
+	}
+
+	public void setGridColor(int argb){
+		gridColor = argb;
+		Arrays.fill(pixels, gridColor);
+		redraw();
+	}
+
+	@Override
+	protected void layoutChildren(){
+		int oldWidth = imageWidth;
+		int oldHeight = imageHeight;
+		if(snapshot != null && fitToBoard() && (imageWidth != oldWidth || imageHeight != oldHeight)){
+			draw(snapshot);
+		}
+		imageView.relocate(snappedLeftInset(), snappedTopInset());
+	}
+
+	/**
+	 * Picks the biggest cell size that fits the board in the view, and makes a new image if that changes the size
+	 * of it.  Grid lines are only drawn once cells are big enough for them not to drown the cells out.
+	 *
+	 * @return Returns false if there is nothing to draw
+	 */
+	private boolean fitToBoard(){
+		int xLength = snapshot.getXLength();
+		int yLength = snapshot.getYLength();
+		if(xLength <= 0 || yLength <= 0){
+			return false;
+		}
+
+		double width = getWidth() - snappedLeftInset() - snappedRightInset();
+		double height = getHeight() - snappedTopInset() - snappedBottomInset();
+		if(width <= 0 || height <= 0){
+			//not laid out yet, guess at the old default of 28 pixel cells
+			width = xLength * 30;
+			height = yLength * 30;
+		}
+		int pitch = Math.max(1, (int)Math.min(width / xLength, height / yLength));
+		gap = pitch >= 6 ? 2 : 0;
+		cellSize = pitch - gap;
+
+		int newWidth = xLength * pitch + gap;
+		int newHeight = yLength * pitch + gap;
+		if(image == null || newWidth != imageWidth || newHeight != imageHeight){
+			imageWidth = newWidth;
+			imageHeight = newHeight;
+			image = new WritableImage(imageWidth, imageHeight);
+			imageView.setImage(image);
+			if(pixels.length < imageWidth * imageHeight){
+				pixels = new int[imageWidth * imageHeight];
+			}
+			//the gaps between rows never change, so fill those in once
+			Arrays.fill(pixels, 0, imageWidth * imageHeight, gridColor);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,151 @@
+package gameoflife;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes checkpoints of a board to a .life file on a thread of its own, so stepping doesn't wait on the disk.
+ *
+ * Each checkpoint is a copy of the board, and a dense board's copy shares its cells, so taking one costs about
+ * as much as copying the cells once.  The file is written under another name first and then moved over the old
+ * one, so a run killed partway through a write still leaves the last whole checkpoint behind.  If one is still
+ * being written when the next is due, only the newest one waiting is kept.
+ *
+ * @author Folz
+ *
+ */
+public class CheckpointWriter implements AutoCloseable {
+	private final File file;
+	private final File temp;
+	private final Thread writer;
+	//newest copy waiting to be written, guarded by this
+	private LifeBoard waiting;
+	private boolean closed = false;
+	private volatile IOException failure;
+	private long checkpointsWritten = 0;
+	private long checkpointsSkipped = 0;
+
+	/**
+	 * Constructor that takes the file to keep the checkpoint in.
+	 *
+	 * @param file File to write each checkpoint over
+	 */
+	public CheckpointWriter(File file){
+		this.file = file;
+		temp = new File(file.getPath() + ".tmp");
+		writer = new Thread(this::run, "Checkpoint writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Copies the board as it is now and queues it up to be written, in place of any checkpoint still waiting.
+	 *
+	 * @param board Board to checkpoint
+	 * @throws IOException If an earlier checkpoint couldn't be written
+	 * @throws UnsupportedOperationException If the board can't be copied
+	 */
+	public void write(LifeBoard board) throws IOException{
+		checkFailure();
+		LifeBoard copy = board.copy();
+		synchronized(this){
+			if(waiting != null){
+				checkpointsSkipped++;
+			}
+			waiting = copy;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Writing thread loop, writes whichever copy is newest until closed.
+	 */
+	private void run(){
+		while(true){
+			LifeBoard next;
+			synchronized(this){
+				try{
+					while(waiting == null && !closed){
+						wait();
+					}
+				}catch(InterruptedException e){
+					return;
+				}
+				if(waiting == null){
+					return;
+				}
+				next = waiting;
+				waiting = null;
+			}
+			//after a failure the copies are still taken, just not written
+			if(failure == null){
+				try{
+					LifeFile.write(next, temp);
+					move();
+					checkpointsWritten++;
+				}catch(IOException e){
+					failure = e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves the finished checkpoint over the last one, in one go if the file system can.
+	 */
+	private void move() throws IOException{
+		try{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}catch(AtomicMoveNotSupportedException e){
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Waits for the last checkpoint queued to be written.
+	 *
+	 * @throws IOException If any checkpoint couldn't be written
+	 */
+	@Override
+	public void close() throws IOException{
+		synchronized(this){
+			closed = true;
+			notifyAll();
+		}
+		try{
+			writer.join();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a checkpoint to be written");
+		}
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException{
+		if(failure != null){
+			throw new IOException("Couldn't write a checkpoint: " + failure.getMessage(), failure);
+		}
+	}
+
+	/**
+	 * Gets the number of checkpoints written so far.  Only up to date once the writer is closed.
+	 *
+	 * @return Returns the number of checkpoints written
+	 */
+	public long getCheckpointsWritten(){
+		return checkpointsWritten;
+	}
+
+	/**
+	 * Gets the number of checkpoints that were swapped for a newer one before they could be written.
+	 *
+	 * @return Returns the number of checkpoints skipped
+	 */
+	public synchronized long getCheckpointsSkipped(){
+		return checkpointsSkipped;
+	}
+}
@@ -0,0 +1,167 @@
+package gameoflife;
+
+import java.util.Arrays;
+
+/**
+ * Watches a board for settling into a still life or an oscillator, from the board's hash after every generation.
+ *
+ * The hashes of the last few generations are kept in a ring, along with a table from hash to the last generation
+ * it was seen at.  When the hash of a new generation has been seen before, that's a candidate cycle with a period
+ * of the distance between them.  Hashes can collide, so the board is copied and the candidate is only confirmed
+ * if the board comes back to exactly the same cells after another period.  Still lifes, empty boards included,
+ * come out as period 1.
+ *
+ * @author Folz
+ *
+ */
+public final class CycleDetector {
+	public static final int DEFAULT_HISTORY = 1024;
+
+	//hash of each generation, generation g in slot g % history
+	private final long[] hashes;
+	private final long[] generations;
+	private int recorded;
+	//slot of the last generation each hash was seen at, plus 1 so that 0 can mean not seen
+	private final LongIntMap lastSeen;
+	private long lastGeneration = -1;
+
+	//candidate being confirmed, if candidateAt isn't -1
+	private final BoardSnapshot candidate = new BoardSnapshot();
+	private long candidateAt = -1;
+	private long candidatePeriod;
+
+	private long period;
+	private long since;
+
+	/**
+	 * Constructor that keeps the default amount of history, enough to spot periods up to 1023.
+	 */
+	public CycleDetector(){
+		this(DEFAULT_HISTORY);
+	}
+
+	/**
+	 * Constructor that keeps a given number of generations of history.  Periods longer than that aren't spotted.
+	 *
+	 * @param history Number of generations to remember
+	 */
+	public CycleDetector(int history){
+		if(history < 2){
+			throw new IllegalArgumentException("History must be at least 2 generations");
+		}
+		hashes = new long[history];
+		generations = new long[history];
+		lastSeen = new LongIntMap(history);
+	}
+
+	/**
+	 * Looks at the board after a generation has been stepped.  If it wasn't stepped exactly one generation since
+	 * last time, like after loading or jumping ahead, the history is started again.
+	 *
+	 * @param board Board to look at
+	 * @return Returns true if this is the generation a cycle was confirmed at
+	 */
+	public boolean observe(Board board){
+		long generation = board.getGeneration();
+		long hash = board.getHash();
+		if(generation != lastGeneration + 1){
+			clearHistory();
+		}
+		lastGeneration = generation;
+
+		boolean found = false;
+		if(candidateAt >= 0 && generation == candidateAt + candidatePeriod){
+			if(board.sameCells(candidate)){
+				period = candidatePeriod;
+				since = earliestRepeat(generation - period);
+				found = true;
+			}
+			candidateAt = -1;
+		}
+
+		int slot = (int)(generation % hashes.length);
+		if(recorded == hashes.length){
+			//the generation in this slot is about to drop out of the history
+			if(lastSeen.get(hashes[slot]) == slot + 1){
+				lastSeen.remove(hashes[slot]);
+			}
+		}else{
+			recorded++;
+		}
+
+		int seen = lastSeen.get(hash);
+		if(period == 0 && candidateAt < 0 && !found && seen != 0){
+			candidatePeriod = generation - generations[seen - 1];
+			candidateAt = generation;
+			board.copyTo(candidate);
+		}
+
+		hashes[slot] = hash;
+		generations[slot] = generation;
+		lastSeen.put(hash, slot + 1);
+		return found;
+	}
+
+	/**
+	 * Forgets everything seen so far, including any cycle found.  Should be called after the board is edited.
+	 */
+	public void reset(){
+		clearHistory();
+		lastGeneration = -1;
+		period = 0;
+		since = 0;
+	}
+
+	/**
+	 * Checks if a cycle has been confirmed.
+	 *
+	 * @return Returns true once the board has been seen going round a cycle
+	 */
+	public boolean isCycleFound(){
+		return period != 0;
+	}
+
+	/**
+	 * Gets the period of the cycle found.
+	 *
+	 * @return Returns the number of generations it takes to come back round, 1 for a still life, or 0 if no cycle
+	 *         has been found
+	 */
+	public long getPeriod(){
+		return period;
+	}
+
+	/**
+	 * Gets the earliest generation still in the history that the board was already going round the cycle at.
+	 *
+	 * @return Returns the generation, or 0 if no cycle has been found
+	 */
+	public long getSinceGeneration(){
+		return since;
+	}
+
+	private void clearHistory(){
+		recorded = 0;
+		lastSeen.clear();
+		candidateAt = -1;
+		Arrays.fill(generations, -1);
+	}
+
+	/**
+	 * Walks back through the history for as long as each generation's hash matches the one a period after it, to
+	 * find where the cycle started.
+	 */
+	private long earliestRepeat(long start){
+		long generation = start;
+		while(generation > 0){
+			long before = generation - 1;
+			int slot = (int)(before % hashes.length);
+			int laterSlot = (int)((before + period) % hashes.length);
+			if(generations[slot] != before || generations[laterSlot] != before + period || hashes[slot] != hashes[laterSlot]){
+				break;
+			}
+			generation = before;
+		}
+		return generation;
+	}
+}
@@ -0,0 +1,145 @@
+package gameoflife;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Writes generations of a board out as numbered PNG frames, frame-00000001.png and so on by generation, on a
+ * thread of its own so stepping doesn't wait on the encoding.
+ *
+ * Generations are copied into one of two snapshots and handed over to the writing thread.  If it falls behind,
+ * writing a frame waits for a snapshot to come free, so however long the run only two frames are ever held.
+ *
+ * @author Folz
+ *
+ */
+public class FrameWriter implements AutoCloseable {
+	//one being copied into, one being encoded
+	private static final int SNAPSHOT_POOL_SIZE = 2;
+	//handed over to tell the writing thread there's nothing more coming
+	private static final BoardSnapshot END = new BoardSnapshot();
+
+	private final File directory;
+	private final int cellSize;
+	private final ArrayBlockingQueue<BoardSnapshot> freeSnapshots = new ArrayBlockingQueue<>(SNAPSHOT_POOL_SIZE);
+	private final ArrayBlockingQueue<BoardSnapshot> waitingSnapshots = new ArrayBlockingQueue<>(SNAPSHOT_POOL_SIZE + 1);
+	private final Thread writer;
+	private volatile IOException failure;
+	private long framesWritten = 0;
+
+	/**
+	 * Constructor that takes where to write the frames and how big to draw them.
+	 *
+	 * @param directory Directory to write the frames into, which is made if it isn't there
+	 * @param cellSize Width and height of each cell in pixels
+	 */
+	public FrameWriter(File directory, int cellSize) throws IOException{
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("Couldn't make " + directory);
+		}
+		if(cellSize < 1){
+			throw new IllegalArgumentException("Cell size must be at least 1");
+		}
+		this.directory = directory;
+		this.cellSize = cellSize;
+		for(int i = 0; i < SNAPSHOT_POOL_SIZE; ++i){
+			freeSnapshots.add(new BoardSnapshot());
+		}
+		writer = new Thread(this::run, "Frame writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Copies the board as it is now and queues it up to be written, waiting if both snapshots are still in use.
+	 *
+	 * @param board Board to write a frame of
+	 * @throws IOException If an earlier frame couldn't be written
+	 */
+	public void write(LifeBoard board) throws IOException{
+		checkFailure();
+		if(!BoardImage.fits(board.getXLength(), board.getYLength(), cellSize)){
+			throw new IOException("A " + board.getXLength() + "x" + board.getYLength() + " board is too big to write at " + cellSize + " pixels a cell");
+		}
+		try{
+			BoardSnapshot snapshot = freeSnapshots.take();
+			board.copyTo(snapshot);
+			waitingSnapshots.put(snapshot);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting to write a frame");
+		}
+	}
+
+	/**
+	 * Writing thread loop, encodes each snapshot handed over and gives it back.
+	 */
+	private void run(){
+		BufferedImage image = null;
+		int[] palette = new int[0];
+		while(true){
+			BoardSnapshot snapshot;
+			try{
+				snapshot = waitingSnapshots.take();
+			}catch(InterruptedException e){
+				return;
+			}
+			if(snapshot == END){
+				return;
+			}
+			//after a failure the frames are still taken, so nothing waits forever, just not written
+			try{
+				if(failure == null){
+					if(palette.length != snapshot.getStateCount()){
+						palette = BoardImage.defaultPalette(snapshot.getStateCount());
+					}
+					image = BoardImage.toImage(snapshot, palette, cellSize, image);
+					BoardImage.writePng(image, new File(directory, String.format("frame-%08d.png", snapshot.getGeneration())));
+					framesWritten++;
+				}
+			}catch(IOException e){
+				failure = e;
+			}catch(RuntimeException e){
+				//anything else would end this thread, and leave write waiting on a snapshot that never comes back
+				failure = new IOException(e.toString(), e);
+			}finally{
+				freeSnapshots.add(snapshot);
+			}
+		}
+	}
+
+	/**
+	 * Waits for every frame queued to be written.
+	 *
+	 * @throws IOException If any frame couldn't be written
+	 */
+	@Override
+	public void close() throws IOException{
+		try{
+			waitingSnapshots.put(END);
+			writer.join();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for frames to be written");
+		}
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException{
+		if(failure != null){
+			throw new IOException("Couldn't write a frame: " + failure.getMessage(), failure);
+		}
+	}
+
+	/**
+	 * Gets the number of frames written so far.  Only up to date once the writer is closed.
+	 *
+	 * @return Returns the number of frames written
+	 */
+	public long getFramesWritten(){
+		return framesWritten;
+	}
+}
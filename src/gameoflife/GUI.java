@@ -1,38 +1,38 @@
 package gameoflife;
 
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.ObjectInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectOutputStream;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
-import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.ColorPicker;
 import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.RadioButton;
+import javafx.scene.control.RadioMenuItem;
+import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleGroup;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.BorderPane;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
-import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
@@ -45,32 +45,41 @@ import javafx.stage.Stage;
  *
  */
 public class GUI extends Application{
-	Board gameBoard;
-	GridPane board;
-	int generations = 0;
+	//every window's board is stepped on the same threads
+	static final SimulationManager MANAGER = new SimulationManager(Runtime.getRuntime().availableProcessors());
+	
+	LifeBoard gameBoard;
+	Simulation simulation;
+	BoardView board;
+	Label generationRate = new Label("0 gen/s");
+	Label frameRate = new Label("0 fps");
+	Label cycleLabel = new Label("");
 	int tick = 50;
-	String liveCellColor = "green";
-	String deadCellColor = "black";
-	String gridColor = "grey";
-	int gridSizeX, gridSizeY;
 	int frequency = 100;
 	boolean impulsing = false;
 	double impulseStrength;
+	//cells painted since the last frame, x and y one after the other, and the state they were painted
+	int[] stroke = new int[64];
+	int strokeLength = 0;
+	int strokeState = 0;
+	PatternCache patterns = new PatternCache();
 	
 	@Override
 	public void start(Stage primaryStage) {
-		gameBoard = new Board(35, 35);
+		//cloned windows come with a simulation already
+		if(simulation == null){
+			gameBoard = new Board(35, 35);
+			simulation = MANAGER.add(gameBoard);
+			simulation.edit(LifeBoard::setup);
+		}
 
 		primaryStage.setTitle("Conway's Game of Life");
 		BorderPane root = new BorderPane();
 		Scene scene = new Scene(root, 700, 700);
 		primaryStage.getIcons().add(raiseFlag());
 		
-		board = new GridPane();
+		board = new BoardView();
 		board.setPadding(new Insets(5, 5, 10, 5));
-		board.setStyle("-fx-background-color: " + gridColor + ";");
-		board.setHgap(2);
-		board.setVgap(2);
 		setUpBoard();
 		
 		root.setCenter(board);
@@ -80,78 +89,55 @@ public class GUI extends Application{
 		primaryStage.setScene(scene);
 		primaryStage.show();
 		display();
+		startRendering();
 		
+		//the last window closing ends the program
 		primaryStage.setOnCloseRequest((event) -> {
-			System.exit(0);;
+			if(MANAGER.remove(simulation) == 0){
+				System.exit(0);
+			}
 		});
 	}
 	
 	/**
-	 * Refresh function for the display.  Updates the color of each cell.
+	 * Refresh function for the display.  Publishes the board as it is now, to be drawn on the next frame.
 	 */
 	private void display() {
-		//optimization
-		if (gridSizeX > gameBoard.getXLength() || gridSizeY > gameBoard.getYLength()) {
-			Iterator<Node> iterator = board.getChildren().iterator();
-			while (iterator.hasNext()) {
-				Node square = iterator.next();
-				if (gameBoard.getXLength() <= GridPane.getColumnIndex(square) || gameBoard.getYLength() <= GridPane.getRowIndex(square)) {
-					iterator.remove();
+		simulation.refresh();
+	}
+	
+	/**
+	 * Starts drawing the newest generation the simulation has published, once per frame, and keeping the
+	 * generations per second and frames per second counters up to date.
+	 */
+	private void startRendering() {
+		new AnimationTimer() {
+			private long lastCount = 0;
+			private long lastGenerations = 0;
+			private int frames = 0;
+			
+			@Override
+			public void handle(long now) {
+				BoardSnapshot snapshot = simulation.takeLatest();
+				if(snapshot != null){
+					board.draw(snapshot);
+					frames++;
 				}
-			}
-		}
-		
-		Pane temp;
-		final boolean[] drawLive = {false};
-		for(int x = 0; x < gameBoard.getXLength(); ++x){
-			for(int y = 0; y < gameBoard.getYLength(); ++y){
-				try {
-					if(gameBoard.getBoard()[y][x]){ 
-						getNodeByCoordinate(x, y).setStyle("-fx-background-color: " + liveCellColor + ";");
-					}else{
-						getNodeByCoordinate(x, y).setStyle("-fx-background-color: " + deadCellColor + ";");
-					}
-				} catch (NullPointerException e) { //expanding grid
-					temp = new Pane();
-					temp.setPrefSize(28, 28);
-					board.add(temp, x, y);
-					
-					if(gameBoard.getBoard()[y][x]){ 
-						temp.setStyle("-fx-background-color: " + liveCellColor + ";");
-					}else{
-						temp.setStyle("-fx-background-color: " + deadCellColor + ";");
-					}
-					
-					temp.setOnMouseClicked((event) -> {
-						Pane source = (Pane)event.getSource();
-						int xLocation = GridPane.getColumnIndex(source);
-						int yLocation = GridPane.getRowIndex(source);
-						gameBoard.getBoard()[yLocation][xLocation] = !gameBoard.getBoard()[yLocation][xLocation];
-						display();
-					});
-					
-					
-					temp.setOnMouseDragEntered((event) -> {
-						Pane source = (Pane)event.getSource();
-						int xLocation = GridPane.getColumnIndex(source);
-						int yLocation = GridPane.getRowIndex(source);
-						
-						gameBoard.getBoard()[yLocation][xLocation] = drawLive[0];
-						
-						display();
-					});
-					
-					
-					temp.setOnDragDetected((event) -> {
-						Pane source = (Pane)event.getSource();
-						int xLocation = GridPane.getColumnIndex(source);
-						int yLocation = GridPane.getRowIndex(source);
-						drawLive[0] = !gameBoard.getBoard()[yLocation][xLocation];
-						((Pane)event.getSource()).startFullDrag();
-					});
+				flushStroke();
+				
+				if(now - lastCount >= 1000000000L){
+					double seconds = (now - lastCount) / 1e9;
+					long stepped = simulation.getGenerationsStepped();
+					generationRate.setText(Math.round((stepped - lastGenerations) / seconds) + " gen/s");
+					frameRate.setText(Math.round(frames / seconds) + " fps");
+					long period = simulation.getCyclePeriod();
+					cycleLabel.setText(period == 0 ? "" : "period " + period + " since generation " + simulation.getCycleSince());
+					lastGenerations = stepped;
+					frames = 0;
+					lastCount = now;
 				}
 			}
-		}
+		}.start();
 	}
 
 	/**
@@ -179,8 +165,6 @@ public class GUI extends Application{
 			
 		}
 		
-		final Thread[] taskThread = {null}; //there has to be a better way to do this
-
 		HBox button = new HBox();
 		ImageView image = new ImageView(play[0]);
 		button.getChildren().add(image);
@@ -189,32 +173,11 @@ public class GUI extends Application{
 			if(playing[0]){ //if it is playing, click to pause
 				image.setImage(play[0]);
 				//stop doing things
-				taskThread[0].interrupt();
+				simulation.stop();
 			}else{
 				image.setImage(pause[0]);
-				//resume doing things
-				taskThread[0] = new Thread( () -> {
-					while(!Thread.currentThread().isInterrupted()){
-						try {
-							Thread.sleep(tick);
-						} catch (InterruptedException e) {
-							Thread.currentThread().interrupt();
-						}
-						
-						Platform.runLater(new Runnable() {
-							@Override
-							public void run() {
-								gameBoard.refreshBoard();
-								if(impulsing && generations%frequency == 0){
-									gameBoard.impulse(impulseStrength);
-								}
-								generations++;
-								display();
-							}//run
-						});//runLater
-					}//while
-				});//taskThread
-				taskThread[0].start();
+				//resume doing things, generations are stepped on the simulation's own thread
+				simulation.start();
 			}
 			playing[0] = !playing[0];
 		});
@@ -225,15 +188,7 @@ public class GUI extends Application{
 		liveColorBox.getChildren().addAll(liveColorLabel, liveColorPicker);
 		liveColorBox.setAlignment(Pos.CENTER);
 		liveColorPicker.setOnAction((event) -> {
-	         Color temp = liveColorPicker.getValue();
-	         int r,g,b;
-	         r = (int)(temp.getRed()  *255);
-	         g = (int)(temp.getGreen()*255);
-	         b = (int)(temp.getBlue() *255);
-	         liveCellColor = "#" + Integer.toHexString(r) + (Integer.toHexString(r).length() == 1? "0":"") +
-					   Integer.toHexString(g) + (Integer.toHexString(g).length() == 1? "0":"") +
-					   Integer.toHexString(b) + (Integer.toHexString(b).length() == 1? "0":"");
-	         display();
+	         board.setLiveColor(toArgb(liveColorPicker.getValue()));
 		     
 		 });
 		 
@@ -243,19 +198,15 @@ public class GUI extends Application{
 		 deadColorBox.getChildren().addAll(deadColorLabel, deadColorPicker);
 		 deadColorBox.setAlignment(Pos.CENTER);
 		 deadColorPicker.setOnAction((event) -> {
-	         Color temp = deadColorPicker.getValue();
-	         int r,g,b;
-	         r = (int)(temp.getRed()  *255);
-	         g = (int)(temp.getGreen()*255);
-	         b = (int)(temp.getBlue() *255);
-	         deadCellColor = "#" + Integer.toHexString(r) + (r==0? "0":"") +
-		 						   Integer.toHexString(g) + (g==0? "0":"") +
-	 							   Integer.toHexString(b) + (b==0? "0":"");
-	         display();
+	         board.setDeadColor(toArgb(deadColorPicker.getValue()));
 		     
 		 });
 		 
-		 controlPanel.getChildren().addAll(liveColorBox, button, deadColorBox);
+		 VBox rateBox = new VBox();
+		 rateBox.getChildren().addAll(generationRate, frameRate, cycleLabel);
+		 rateBox.setAlignment(Pos.CENTER);
+		 
+		 controlPanel.getChildren().addAll(liveColorBox, button, deadColorBox, rateBox);
 		 controlPanel.setAlignment(Pos.CENTER);
 		 controlPanel.setPrefHeight(60);
 		 controlPanel.setStyle("-fx-background-color: #dde8f0; "
@@ -267,53 +218,70 @@ public class GUI extends Application{
 	 * Method for initializing and displaying the board.
 	 */
 	private void setUpBoard() {
-		gameBoard.setup();
-		gridSizeX = gameBoard.getXLength();
-		gridSizeY = gameBoard.getYLength();
-		final boolean[] drawLive = {false};
-		
-		Pane temp;
-		for(int x = 0; x < gameBoard.getXLength(); ++x){
-			for(int y = 0; y < gameBoard.getYLength(); ++y){
-				temp = new Pane();
-				if(gameBoard.getBoard()[y][x]){
-					temp.setStyle("-fx-background-color: " + liveCellColor + ";");
+		//clicking a cell flips it, dragging from it paints every cell passed over the same way
+		//on a multi-state board clicking moves the cell on to its next state, and dragging paints that state
+		//the cells are drawn and handed to the simulation once a frame, so painting never waits on a generation
+		board.setOnMousePressed((event) -> {
+			int[] cell = board.cellAt(event.getX(), event.getY());
+			if(cell != null){
+				flushStroke();
+				strokeState = (board.getState(cell[0], cell[1]) + 1) % board.getStateCount();
+				addToStroke(cell);
+			}
+		});
+		
+		board.setOnMouseDragged((event) -> {
+			int[] cell = board.cellAt(event.getX(), event.getY());
+			//the same cell comes up over and over while the mouse moves inside it
+			if(cell != null && (strokeLength == 0 || stroke[strokeLength - 2] != cell[0] || stroke[strokeLength - 1] != cell[1])){
+				addToStroke(cell);
+			}
+		});
+		
+		board.setOnMouseReleased((event) -> flushStroke());
+	}
+	
+	/**
+	 * Adds a cell to the stroke being painted.
+	 * 
+	 * @param cell {x, y} of the cell
+	 */
+	private void addToStroke(int[] cell) {
+		if(strokeLength + 2 > stroke.length){
+			stroke = Arrays.copyOf(stroke, stroke.length * 2);
+		}
+		stroke[strokeLength++] = cell[0];
+		stroke[strokeLength++] = cell[1];
+	}
+	
+	/**
+	 * Draws the cells painted since the last frame and queues them up as one change to the board.
+	 */
+	private void flushStroke() {
+		if(strokeLength == 0){
+			return;
+		}
+		board.drawCells(stroke, strokeLength / 2, strokeState);
+		final int[] cells = Arrays.copyOf(stroke, strokeLength);
+		final int state = strokeState;
+		strokeLength = 0;
+		simulation.queueEdit((current) -> {
+			//the board could have been resized or switched since these were painted
+			boolean multiState = current instanceof MultiStateBoard;
+			if(multiState && state >= current.getRule().getStates()){
+				return;
+			}
+			for(int i = 0; i < cells.length; i += 2){
+				if(cells[i] >= current.getXLength() || cells[i + 1] >= current.getYLength()){
+					continue;
+				}
+				if(multiState){
+					((MultiStateBoard)current).setState(cells[i], cells[i + 1], state);
 				}else{
-					temp.setStyle("-fx-background-color: " + deadCellColor + ";");
+					current.setCell(cells[i], cells[i + 1], state == 1);
 				}
-				temp.setPrefSize(28, 28);
-				
-				temp.setOnMouseClicked((event) -> {
-					Pane source = (Pane)event.getSource();
-					int xLocation = GridPane.getColumnIndex(source);
-					int yLocation = GridPane.getRowIndex(source);
-					
-					gameBoard.getBoard()[yLocation][xLocation] = !gameBoard.getBoard()[yLocation][xLocation];
-					display();
-				});
-				
-				temp.setOnMouseDragEntered((event) -> {
-					Pane source = (Pane)event.getSource();
-					int xLocation = GridPane.getColumnIndex(source);
-					int yLocation = GridPane.getRowIndex(source);
-					
-					gameBoard.getBoard()[yLocation][xLocation] = drawLive[0];
-					
-					display();
-				});
-				
-				
-				temp.setOnDragDetected((event) -> {
-					Pane source = (Pane)event.getSource();
-					int xLocation = GridPane.getColumnIndex(source);
-					int yLocation = GridPane.getRowIndex(source);
-					drawLive[0] = !gameBoard.getBoard()[yLocation][xLocation];
-					((Pane)event.getSource()).startFullDrag();
-				});
-				
-				board.add(temp, x, y);
 			}
-		}
+		});
 	}
 
 	/**
@@ -334,15 +302,18 @@ public class GUI extends Application{
 			FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter("LIFE files (*.life)", "*.life");
             fileChooser.getExtensionFilters().add(extFilter);
 			File selectedFile = fileChooser.showSaveDialog(primaryStage);
-			
-			try{
-				ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(selectedFile));
-				oos.writeObject(gameBoard);
-				oos.close();
-			}catch(IOException e){
-				
+			if(selectedFile == null){
+				return;
 			}
 			
+			simulation.edit((current) -> {
+				try{
+					LifeFile.write(current, selectedFile);
+				}catch(IOException e){
+					System.out.println("Couldn't save: " + e.getMessage());
+				}
+			});
+			
 		});
 		
 		MenuItem load = new MenuItem("Load...");
@@ -351,15 +322,14 @@ public class GUI extends Application{
 			FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter("LIFE files (*.life)", "*.life");
             fileChooser.getExtensionFilters().add(extFilter);
 			File selectedFile = fileChooser.showOpenDialog(primaryStage);
+			if(selectedFile == null){
+				return;
+			}
             
 			try{
-				ObjectInputStream ois = new ObjectInputStream(new FileInputStream(selectedFile));
-				gameBoard = (Board)ois.readObject();
-				ois.close();
-				display();
-			}catch(FileNotFoundException e){
-				System.out.println("B");
-				
+				//reads the old serialized files too
+				gameBoard = LifeFile.read(selectedFile);
+				simulation.setBoard(gameBoard);
 			}catch(ClassNotFoundException e){
 				System.out.println("C");
 				
@@ -370,51 +340,111 @@ public class GUI extends Application{
 		});
 		
 		/*
-		 * unimplemented
-		 * Plan was to import an image from a common format, convert to an image of RGB values,
-		 * convert the RGB into a binary image where each pixel is true if corresponding RBG pixel is within a certain %error of the current live cell color,
-		 * then interpolate that image from whatever the native image resolution is, into whatever the current resolution of the board is,
-		 * save the resulting board into the gameBoard, then display the new board
+		 * Imports an image from a common format, where each pixel is alive if it's within a certain %error of the current live cell color,
+		 * then resamples that from whatever the native image resolution is into whatever the current resolution of the board is.
+		 * Decoding and resampling happen on a thread of their own so the window doesn't freeze on big images.
 		 */
-//		MenuItem importImage = new MenuItem("Import Image");
-//		importImage.setOnAction((event) -> {
-//			FileChooser fileChooser = new FileChooser();
-//			FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter(".png files (*.png)", "*.png");
-//            fileChooser.getExtensionFilters().add(extFilter);
-//			File selectedFile = fileChooser.showOpenDialog(primaryStage);
-//            
-//			try{
-//				ObjectInputStream ois = new ObjectInputStream(new FileInputStream(selectedFile));
-//				
-//				
-//				
-//				
-//				//ois.close();
-//			}catch(FileNotFoundException e){
-//				System.out.println("B");
-//			}catch(IOException e){
-//				System.out.println("A");
-//			}
-//		});
+		MenuItem importImage = new MenuItem("Import Image...");
+		importImage.setOnAction((event) -> {
+			FileChooser fileChooser = new FileChooser();
+			fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Images (*.png, *.jpg, *.gif, *.bmp)", "*.png", "*.jpg", "*.jpeg", "*.gif", "*.bmp"));
+			File selectedFile = fileChooser.showOpenDialog(primaryStage);
+			if(selectedFile == null){
+				return;
+			}
+			
+			int liveColor = board.getLiveColor();
+			Thread importer = new Thread(() -> {
+				try{
+					BufferedImage image = BoardImage.read(selectedFile);
+					simulation.edit((current) -> BoardImage.importImage(image, current, liveColor, BoardImage.DEFAULT_TOLERANCE, ForkJoinPool.commonPool()));
+				}catch(IOException e){
+					System.out.println("Couldn't import the image: " + e.getMessage());
+				}
+			}, "Import Image");
+			importer.setDaemon(true);
+			importer.start();
+		});
+		
+		//saves the board as it is now as a PNG, in the colours it's drawn in, on a thread of its own as well
+		MenuItem exportImage = new MenuItem("Export Image...");
+		exportImage.setOnAction((event) -> {
+			FileChooser fileChooser = new FileChooser();
+			fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PNG files (*.png)", "*.png"));
+			File selectedFile = fileChooser.showSaveDialog(primaryStage);
+			if(selectedFile == null){
+				return;
+			}
+			
+			int[] palette = new int[board.getStateCount()];
+			for(int state = 0; state < palette.length; ++state){
+				palette[state] = board.getStateColor(state, palette.length);
+			}
+			Thread exporter = new Thread(() -> {
+				BoardSnapshot snapshot = new BoardSnapshot();
+				simulation.inspect((current) -> current.copyTo(snapshot));
+				//at least 512 pixels across, so small boards don't come out as a speck
+				int cellSize = Math.max(1, 512 / Math.max(snapshot.getXLength(), snapshot.getYLength()));
+				int[] colors = snapshot.getStateCount() > palette.length ? BoardImage.defaultPalette(snapshot.getStateCount()) : palette;
+				try{
+					BoardImage.writePng(BoardImage.toImage(snapshot, colors, cellSize, null), selectedFile);
+				}catch(IOException | IllegalArgumentException e){
+					System.out.println("Couldn't export the image: " + e.getMessage());
+				}
+			}, "Export Image");
+			exporter.setDaemon(true);
+			exporter.start();
+		});
+		
+		//stamps a pattern file into the middle of the board, growing the board first if it doesn't fit
+		MenuItem importPattern = new MenuItem("Import Pattern...");
+		importPattern.setOnAction((event) -> {
+			FileChooser fileChooser = new FileChooser();
+			fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Patterns (*.rle, *.cells, *.lif)", "*.rle", "*.cells", "*.lif"));
+			File selectedFile = fileChooser.showOpenDialog(primaryStage);
+			if(selectedFile == null){
+				return;
+			}
+			
+			Pattern pattern;
+			try{
+				pattern = patterns.get(selectedFile);
+			}catch(IOException e){
+				System.out.println("Couldn't read the pattern: " + e.getMessage());
+				return;
+			}
+			simulation.edit((current) -> {
+				if(pattern.getWidth() > current.getXLength() || pattern.getHeight() > current.getYLength()){
+					current.setBoardSize(Math.max(pattern.getWidth(), current.getXLength()), Math.max(pattern.getHeight(), current.getYLength()));
+				}
+				if(pattern.getRule() != null){
+					try{
+						current.setRule(pattern.getRule());
+					}catch(IllegalArgumentException e){
+						System.out.println("Couldn't use the pattern's rule: " + e.getMessage());
+					}
+				}
+				pattern.stamp(current, (current.getXLength() - pattern.getWidth()) / 2, (current.getYLength() - pattern.getHeight()) / 2);
+			});
+		});
 		
 		MenuItem newGame = new MenuItem("New Game");
 		newGame.setOnAction((event) -> {
-			gameBoard.setup();
-			display();
+			simulation.edit(LifeBoard::setup);
 		});
 		
-		file.getItems().addAll(save, load, newGame);
+		file.getItems().addAll(save, load, importPattern, importImage, exportImage, newGame);
 		
 		
 		Menu edit = new Menu("Edit");
 		
 		MenuItem clone = new MenuItem("Clone Board");
+		//opens another window on a copy of the board, which shares the cells until either one changes
 		clone.setOnAction((event) -> {
 			GUI application = new GUI();
-			Stage applicationStage = new Stage();
-			application.start(applicationStage);
-			application.setGameBoard(gameBoard);
-			application.display();
+			application.simulation = MANAGER.copy(simulation);
+			application.gameBoard = application.simulation.getBoard();
+			application.start(new Stage());
 		});
 		
 		MenuItem resize = new MenuItem("Resize Grid");
@@ -443,11 +473,8 @@ public class GUI extends Application{
             submit.setOnMouseClicked((subEvent) -> {
             	int xSize = Integer.parseInt(xSizeField.getText());
             	int ySize = Integer.parseInt(ySizeField.getText());
-            	gameBoard.setBoardSize(xSize, ySize);
-            	
-            	display();
-        		gridSizeX = gameBoard.getXLength();
-        		gridSizeY = gameBoard.getYLength();
+            	simulation.edit((current) -> current.setBoardSize(xSize, ySize));
+
             	dialog.close();
             });
 
@@ -464,10 +491,136 @@ public class GUI extends Application{
             dialog.show();
 		});
 		
+		MenuItem jumpAhead = new MenuItem("Jump Ahead...");
+		jumpAhead.setOnAction((event) -> {
+			Stage dialog = new Stage();
+            dialog.initOwner(primaryStage);
+            
+            HBox jumpBox = new HBox(5);
+            Label jumpLabel = new Label("Generations: 2^");
+            TextField jumpField = new TextField("10");
+            jumpBox.getChildren().addAll(jumpLabel, jumpField);
+            jumpBox.setAlignment(Pos.CENTER);
+            
+            VBox root = new VBox(10);
+            Button submit = new Button("submit");
+            Label jumpError = new Label();
+            submit.setOnMouseClicked((subEvent) -> {
+            	int k;
+            	try{
+            		k = Integer.parseInt(jumpField.getText().trim());
+            	}catch(NumberFormatException e){
+            		k = -1;
+            	}
+            	if(k < 0 || k > 60){
+            		jumpError.setText("Enter a power from 0 to 60");
+            		return;
+            	}
+            	dialog.close();
+            	
+            	//the jump runs on a copy, on a thread of its own, so neither the window nor stepping waits on it
+            	int power = k;
+            	Thread jumper = new Thread(() -> {
+            		Board[] copy = new Board[1];
+            		simulation.inspect((current) -> copy[0] = current instanceof Board ? ((Board)current).copy() : null);
+            		if(copy[0] == null){
+            			return;
+            		}
+            		//HashLife runs on an open plane, so this only matches stepping while the pattern stays off the edges
+            		HashLife hashLife = new HashLife(copy[0]);
+            		hashLife.advance(power);
+            		simulation.edit((current) -> {
+            			//the board could have been swapped for another kind while jumping
+            			if(current instanceof Board){
+            				hashLife.toBoard((Board)current);
+            			}
+            		});
+            	}, "Jump Ahead");
+            	jumper.setDaemon(true);
+            	jumper.start();
+            });
+            
+            HBox submitBox = new HBox();
+            submitBox.setAlignment(Pos.CENTER);
+            submitBox.getChildren().add(submit);
+            root.getChildren().addAll(jumpBox, jumpError, submitBox);
+            root.setAlignment(Pos.CENTER);
+            
+            Scene dialogScene = new Scene(root, 250, 130);
+            dialog.getIcons().add(raiseFlag());
+            dialog.setTitle("Jump Ahead");
+            dialog.setScene(dialogScene);
+            dialog.show();
+		});
+		
+		CheckMenuItem keepHistory = new CheckMenuItem("Keep History");
+		//off to start with, since keeping every generation costs some of the speed of stepping a big board
+		keepHistory.setOnAction((event) -> {
+			simulation.setHistory(keepHistory.isSelected() ? new BoardHistory() : null);
+		});
+		
+		MenuItem rewind = new MenuItem("Rewind...");
+		rewind.disableProperty().bind(keepHistory.selectedProperty().not());
+		//dragging the slider winds the board back to each generation kept, and playing carries on from there
+		rewind.setOnAction((event) -> {
+			BoardHistory history = simulation.getHistory();
+			if(history == null || history.size() == 0){
+				return;
+			}
+			Stage dialog = new Stage();
+			dialog.initOwner(primaryStage);
+			
+			long newest = history.getNewestGeneration();
+			Slider generationSlider = new Slider(history.getOldestGeneration(), newest, newest);
+			Label generationLabel = new Label("Generation " + newest);
+			generationSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+				long generation = Math.round(newValue.doubleValue());
+				//generations jumped over or dropped to save memory aren't there to go back to
+				if(simulation.rewind(generation)){
+					generationLabel.setText("Generation " + generation);
+				}
+			});
+			
+			VBox root = new VBox(10);
+			root.setPadding(new Insets(20));
+			root.getChildren().addAll(generationLabel, generationSlider);
+			root.setAlignment(Pos.CENTER);
+			
+			Scene dialogScene = new Scene(root, 350, 100);
+			dialog.getIcons().add(raiseFlag());
+			dialog.setTitle("Rewind");
+			dialog.setScene(dialogScene);
+			dialog.show();
+		});
+		
+		Menu boardType = new Menu("Board Type");
+		ToggleGroup boardTypeGroup = new ToggleGroup();
+		RadioMenuItem denseType = new RadioMenuItem("Dense");
+		RadioMenuItem sparseType = new RadioMenuItem("Sparse");
+		RadioMenuItem unboundedType = new RadioMenuItem("Sparse, Unbounded");
+		RadioMenuItem multiStateType = new RadioMenuItem("Multi-State");
+		denseType.setToggleGroup(boardTypeGroup);
+		sparseType.setToggleGroup(boardTypeGroup);
+		unboundedType.setToggleGroup(boardTypeGroup);
+		multiStateType.setToggleGroup(boardTypeGroup);
+		boardTypeGroup.selectToggle(denseType);
+		denseType.setOnAction((event) -> {
+			switchBoard(new Board(gameBoard.getXLength(), gameBoard.getYLength()));
+		});
+		sparseType.setOnAction((event) -> {
+			switchBoard(new SparseBoard(gameBoard.getXLength(), gameBoard.getYLength(), true));
+		});
+		unboundedType.setOnAction((event) -> {
+			switchBoard(new SparseBoard(gameBoard.getXLength(), gameBoard.getYLength(), false));
+		});
+		multiStateType.setOnAction((event) -> {
+			switchBoard(new MultiStateBoard(gameBoard.getXLength(), gameBoard.getYLength(), gameBoard.getRule()));
+		});
+		boardType.getItems().addAll(denseType, sparseType, unboundedType, multiStateType);
+		
 		MenuItem clearBoard = new MenuItem("Clear Board");
 		clearBoard.setOnAction((event) -> {
-			gameBoard.clearBoard();
-			display();
+			simulation.edit(LifeBoard::clearBoard);
 		});
 		
 		MenuItem advanced = new MenuItem("Advanced Options");
@@ -483,23 +636,14 @@ public class GUI extends Application{
     		gridColorBox.getChildren().addAll(gridColorLabel, gridColorPicker);
     		gridColorBox.setAlignment(Pos.CENTER);
 			gridColorPicker.setOnAction((subEvent) -> {
-		        Color temp = gridColorPicker.getValue();
-		        int r,g,b;
-		        r = (int)(temp.getRed()  *255);
-		        g = (int)(temp.getGreen()*255);
-		        b = (int)(temp.getBlue() *255);
-		        gridColor = "#" + Integer.toHexString(r) + (r==0? "0":"") +
-								  Integer.toHexString(g) + (g==0? "0":"") +
-	 						      Integer.toHexString(b) + (b==0? "0":"");
-
-				board.setStyle("-fx-background-color: " + gridColor + ";");
+				board.setGridColor(toArgb(gridColorPicker.getValue()));
 			});
 			
 			HBox speedBox = new HBox();
 			Slider gameSpeed = new Slider();
 			Label speedLabel = new Label("Game speed: ");
 			gameSpeed.setMin(50);
-			gameSpeed.setMax(1500);
+			gameSpeed.setMax(1550); //all the way up is as fast as it can go
 			gameSpeed.setValue(1550 - tick);
 			gameSpeed.setOnDragDetected((subEvent) -> {
 				try {
@@ -510,6 +654,7 @@ public class GUI extends Application{
 			});
 			gameSpeed.setOnMouseDragged((subEvent) -> {
 				tick = 1550 - (int)gameSpeed.getValue();
+				simulation.setTick(tick);
 			});
 			
 			speedBox.getChildren().addAll(speedLabel, gameSpeed);
@@ -554,6 +699,7 @@ public class GUI extends Application{
 			});
 			strengthSlider.setOnMouseDragged((subEvent) -> {
 				impulseStrength = strengthSlider.getValue()/100;
+				simulation.setImpulse(impulsing, frequency, impulseStrength);
 			});
 			strengthBox.getChildren().addAll(strengthLabel, strengthSlider);
 			strengthBox.setAlignment(Pos.CENTER);
@@ -562,12 +708,52 @@ public class GUI extends Application{
 			applyImpulse.setOnAction((subEvent) -> {
 				frequency = Integer.parseInt(frequencyField.getText());
 				impulsing = impulseToggle.getSelectedToggle().equals(toggleOn);
+				simulation.setImpulse(impulsing, frequency, impulseStrength);
 			});
 			
 			impulseBox.getChildren().addAll(impulseToggleBox, frequencyBox, strengthBox, applyImpulse);
 			
-			root.getChildren().addAll(gridColorBox, speedBox, impulseBox);
-			Scene dialogScene = new Scene(root, 300, 250);
+			HBox ruleBox = new HBox(10);
+			Label ruleLabel = new Label("Rule: ");
+			TextField ruleField = new TextField(gameBoard.getRule().toString());
+			ruleField.setPrefColumnCount(10);
+			Button applyRule = new Button("Apply Rule");
+			applyRule.setOnAction((subEvent) -> {
+				try{
+					Rule rule = Rule.parse(ruleField.getText());
+					simulation.edit((current) -> current.setRule(rule));
+					ruleField.setText(rule.toString());
+				}catch(IllegalArgumentException e){
+					ruleField.setText(e.getMessage());
+				}
+			});
+			ruleBox.getChildren().addAll(ruleLabel, ruleField, applyRule);
+			ruleBox.setAlignment(Pos.CENTER);
+			
+			root.getChildren().addAll(gridColorBox, speedBox, impulseBox, ruleBox);
+			
+			//a colour for every state past alive, on boards that have them
+			int states = gameBoard.getRule().getStates();
+			if(gameBoard instanceof MultiStateBoard && states > 2){
+				VBox stateColorBox = new VBox(5);
+				for(int state = 2; state < states; ++state){
+					final int colorState = state;
+					int argb = board.getStateColor(state, states);
+					ColorPicker stateColorPicker = new ColorPicker(Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF));
+					stateColorPicker.setOnAction((subEvent) -> {
+						board.setStateColor(colorState, toArgb(stateColorPicker.getValue()));
+					});
+					HBox stateBox = new HBox();
+					stateBox.getChildren().addAll(new Label("State " + state + " color: "), stateColorPicker);
+					stateBox.setAlignment(Pos.CENTER);
+					stateColorBox.getChildren().add(stateBox);
+				}
+				ScrollPane stateScroll = new ScrollPane(stateColorBox);
+				stateScroll.setFitToWidth(true);
+				stateScroll.setPrefViewportHeight(90);
+				root.getChildren().add(stateScroll);
+			}
+			Scene dialogScene = new Scene(root, 300, gameBoard instanceof MultiStateBoard && states > 2 ? 420 : 300);
             dialog.getIcons().add(raiseFlag());
             dialog.setTitle("Advanced");
             dialog.setScene(dialogScene);
@@ -575,7 +761,11 @@ public class GUI extends Application{
 		});
 		
 		
-		edit.getItems().addAll(clone, resize, clearBoard, advanced);
+		edit.getItems().addAll(clone, resize, jumpAhead, keepHistory, rewind, boardType, clearBoard, advanced);
+		edit.setOnShowing((event) -> {
+			//HashLife only loads dense boards, and can't have empty space coming to life
+			jumpAhead.setDisable(!(gameBoard instanceof Board) || gameBoard.getRule().birthsFromNothing());
+		});
 		
 		
 		Menu help = new Menu("Help");
@@ -586,11 +776,14 @@ public class GUI extends Application{
             dialog.initOwner(primaryStage);
             
             VBox dialogBox = new VBox();
-            Label rules = new Label(  "The program iterates once every " + tick/1000.0 + " second" + (tick==1000? "":"s") + " according to the following rules: \n"
-				            		+ "\t1) A dead cell with exactly three live neighbours will become alive, \n"
+            Rule rule = gameBoard.getRule();
+            Label rules = new Label(  "The program iterates " + (tick==0? "as fast as it can" : "once every " + tick/1000.0 + " second" + (tick==1000? "":"s")) + " according to the rule " + rule + ": \n"
+				            		+ "\t1) A dead cell with " + describeCounts(rule.getBirthCounts()) + " live neighbours will become alive, \n"
 				            		+ "\t    otherwise it will stay dead.\n"
-				            		+ "\t2) A live cell with two or three live neighbours will stay alive, \n"
-				            		+ "\t    otherwise it will die.");
+				            		+ "\t2) A live cell with " + describeCounts(rule.getSurvivalCounts()) + " live neighbours will stay alive, \n"
+				            		+ "\t    otherwise it will die."
+				            		+ (rule.getStates() > 2 ? "\n\t3) Cells can also be in " + (rule.getStates() - 2) + " more states, each with its own color,\n"
+				            							    + "\t    which the rule moves them through." : ""));
             Label userInputInfo = new Label(  "The user of this program can switch a cell from alive to dead, or from dead to alive \n"
             								+ "by clicking on the desired cell.  If there is no user input, the program will continue\n"
             								+ "iterating.  The user may also pause and resume the simulation, as well as change \n"
@@ -636,21 +829,36 @@ public class GUI extends Application{
 	}
 
 	/**
-	 * Utility function to locate a node in a GridPane by a particular pair of coordinates
+	 * Writes out a list of neighbour counts for the help text, like "2 or 3".
 	 * 
-	 * @param x X coordinate of desired Node
-	 * @param y Y coordinate of desired Node
-	 * @return Returns the desired Node
+	 * @param counts Neighbour counts, smallest first
+	 * @return Returns the counts as words
 	 */
-	private Node getNodeByCoordinate(int x, int y){ 
-		Node temp = null;
-		for(Node node : board.getChildren()){ //there has to be a better way to do this
-			if(x == GridPane.getColumnIndex(node) && y == GridPane.getRowIndex(node)){
-				temp = node;
-				break;
-			}
+	private static String describeCounts(int[] counts){
+		if(counts.length == 0){
+			return "no number of";
+		}
+		if(counts.length == 1){
+			return "exactly " + counts[0];
 		}
-		return temp;
+		String text = "" + counts[0];
+		for(int i = 1; i < counts.length; ++i){
+			text += (i == counts.length - 1 ? " or " : ", ") + counts[i];
+		}
+		return text;
+	}
+
+	/**
+	 * Converts a colour to a packed ARGB int for the board view.
+	 * 
+	 * @param color Colour to convert
+	 * @return Returns the colour as 0xAARRGGBB
+	 */
+	private static int toArgb(Color color){
+		return (int)Math.round(color.getOpacity() * 255) << 24
+			 | (int)Math.round(color.getRed() * 255) << 16
+			 | (int)Math.round(color.getGreen() * 255) << 8
+			 | (int)Math.round(color.getBlue() * 255);
 	}
 
 	/**
@@ -674,11 +882,28 @@ public class GUI extends Application{
 	}
 	
 	/**
-	 * Sets a given board as the board to display.
-	 * @param gameBoard Board to display
+	 * Moves the cells on display onto a different kind of board, and shows that one from then on.
+	 * 
+	 * @param newBoard Empty board of the same size to switch to
 	 */
-	private void setGameBoard(Board gameBoard){
-		this.gameBoard = gameBoard;
+	private void switchBoard(LifeBoard newBoard){
+		try{
+			newBoard.setRule(gameBoard.getRule());
+		}catch(IllegalArgumentException e){
+			System.out.println(e.getMessage());
+			return;
+		}
+		simulation.edit((current) -> {
+			for(int y = 0; y < current.getYLength(); ++y){
+				for(int x = 0; x < current.getXLength(); ++x){
+					if(current.getCell(x, y)){
+						newBoard.setCell(x, y, true);
+					}
+				}
+			}
+		});
+		gameBoard = newBoard;
+		simulation.setBoard(newBoard);
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,411 @@
+package gameoflife;
+
+import java.util.Arrays;
+
+/**
+ * HashLife engine for jumping a pattern a very large number of generations ahead.
+ *
+ * The universe is a quadtree of canonical nodes, so identical regions anywhere in the pattern (or at any time) are
+ * the same node, and each node remembers its own future.  Unlike Board the universe is an unbounded plane rather than
+ * a torus, so results only match refreshBoard while the pattern stays clear of the board's edges.
+ *
+ * Memory is bounded by a node limit: once a jump leaves more nodes than that, everything not reachable from the
+ * current pattern is dropped, along with all remembered results.
+ *
+ * @author Folz
+ *
+ */
+public class HashLife {
+	private static final int DEFAULT_MAX_NODES = 1 << 22;
+	private static final int MIN_LEVEL = 3;
+
+	private final int maxNodes;
+	private final Rule rule;
+	private final Node deadCell = new Node(0, 0);
+	private final Node liveCell = new Node(1, 1);
+	private final Node[] emptyNodes = new Node[64];
+	//next generation of the centre 2x2 of every 4x4 block, indexed by the block's 16 cells
+	private final byte[] blockResults = new byte[1 << 16];
+	private Node[] table = new Node[1 << 16];
+	private int nodeCount = 0;
+	private int cachedStep = -1;
+
+	private Node root;
+	private long originX = 0;
+	private long originY = 0;
+	private long generation;
+
+	/**
+	 * Constructor that loads the live cells of a board, with the board's (0, 0) at the origin of the plane.
+	 *
+	 * @param board Board to load
+	 */
+	public HashLife(Board board){
+		this(board, DEFAULT_MAX_NODES);
+	}
+
+	/**
+	 * Constructor that loads the live cells of a board, with the board's (0, 0) at the origin of the plane.
+	 *
+	 * @param board Board to load
+	 * @param maxNodes Number of nodes to keep before unused ones and remembered results are evicted
+	 * @throws IllegalArgumentException If the board's rule brings empty space to life, which an infinite plane can't do
+	 */
+	public HashLife(Board board, int maxNodes){
+		if(board.getRule().birthsFromNothing()){
+			throw new IllegalArgumentException("HashLife can't use a rule with B0");
+		}
+		this.maxNodes = maxNodes;
+		this.rule = board.getRule();
+		fillBlockResults();
+
+		int level = MIN_LEVEL;
+		while((1L << level) < Math.max(board.getXLength(), board.getYLength())){
+			++level;
+		}
+		root = build(board, 0, 0, level);
+		generation = board.getGeneration();
+	}
+
+	/**
+	 * Advances the pattern by 2^k generations in one go.
+	 *
+	 * @param k Power of two of the number of generations to advance
+	 */
+	public void advance(int k){
+		if(k < 0 || k > 60){
+			throw new IllegalArgumentException("Can only advance by 2^0 to 2^60 generations");
+		}
+		if(k != cachedStep){
+			//remembered results are for a particular step size
+			clearResults();
+			cachedStep = k;
+		}
+
+		//the pattern has to sit in the middle quarter of the root, so it can't grow out of the result
+		while(root.level < k + 2 || !isCentred(root)){
+			expand();
+		}
+		expand();
+
+		long offset = 1L << (root.level - 2);
+		root = successor(root);
+		originX += offset;
+		originY += offset;
+		generation += 1L << k;
+
+		if(nodeCount > maxNodes){
+			collect();
+		}
+	}
+
+	/**
+	 * Writes the pattern onto a board, with the origin of the plane at the board's (0, 0).  Any live cells that lie
+	 * outside the board are left off.
+	 *
+	 * @param board Board to write to
+	 */
+	public void toBoard(Board board){
+		board.setGeneration(generation);
+		board.clearBoard();
+		writeCells(board, root, originX, originY);
+	}
+
+	public long getGeneration(){
+		return generation;
+	}
+
+	public long getPopulation(){
+		return root.population;
+	}
+
+	public int getNodeCount(){
+		return nodeCount;
+	}
+
+	/**
+	 * Builds the node for a square of a board.
+	 *
+	 * @param board Board to read
+	 * @param x Left edge of the square
+	 * @param y Top edge of the square
+	 * @param level Size of the square, as a power of two
+	 * @return Returns the canonical node for the square
+	 */
+	private Node build(Board board, long x, long y, int level){
+		if(x >= board.getXLength() || y >= board.getYLength()){
+			return empty(level);
+		}
+		if(level == 0){
+			return board.getCell((int)x, (int)y) ? liveCell : deadCell;
+		}
+		long half = 1L << (level - 1);
+		return join(build(board, x, y, level - 1),
+					build(board, x + half, y, level - 1),
+					build(board, x, y + half, level - 1),
+					build(board, x + half, y + half, level - 1));
+	}
+
+	/**
+	 * Sets the live cells of a node that fall on the board.
+	 */
+	private void writeCells(Board board, Node node, long x, long y){
+		long size = 1L << node.level;
+		if(node.population == 0 || x >= board.getXLength() || y >= board.getYLength() || x + size <= 0 || y + size <= 0){
+			return;
+		}
+		if(node.level == 0){
+			board.setCell((int)x, (int)y, true);
+			return;
+		}
+		long half = size >> 1;
+		writeCells(board, node.nw, x, y);
+		writeCells(board, node.ne, x + half, y);
+		writeCells(board, node.sw, x, y + half);
+		writeCells(board, node.se, x + half, y + half);
+	}
+
+	/**
+	 * Finds the centre of a node, one level down, 2^min(level-2, cachedStep) generations in the future.
+	 *
+	 * @param node Node to advance, at least level 2
+	 * @return Returns the advanced centre of the node
+	 */
+	private Node successor(Node node){
+		if(node.result != null){
+			return node.result;
+		}
+
+		Node result;
+		if(node.population == 0){
+			result = empty(node.level - 1);
+		}else if(node.level == 2){
+			result = blockSuccessor(node);
+		}else{
+			//nine overlapping sub-squares, each half the size of the node
+			Node n00 = node.nw;
+			Node n01 = join(node.nw.ne, node.ne.nw, node.nw.se, node.ne.sw);
+			Node n02 = node.ne;
+			Node n10 = join(node.nw.sw, node.nw.se, node.sw.nw, node.sw.ne);
+			Node n11 = join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+			Node n12 = join(node.ne.sw, node.ne.se, node.se.nw, node.se.ne);
+			Node n20 = node.sw;
+			Node n21 = join(node.sw.ne, node.se.nw, node.sw.se, node.se.sw);
+			Node n22 = node.se;
+
+			Node r00 = successor(n00);
+			Node r01 = successor(n01);
+			Node r02 = successor(n02);
+			Node r10 = successor(n10);
+			Node r11 = successor(n11);
+			Node r12 = successor(n12);
+			Node r20 = successor(n20);
+			Node r21 = successor(n21);
+			Node r22 = successor(n22);
+
+			Node nw = join(r00, r01, r10, r11);
+			Node ne = join(r01, r02, r11, r12);
+			Node sw = join(r10, r11, r20, r21);
+			Node se = join(r11, r12, r21, r22);
+
+			if(cachedStep >= node.level - 2){
+				//full speed, advance a second time
+				result = join(successor(nw), successor(ne), successor(sw), successor(se));
+			}else{
+				//already advanced far enough, just take the centres
+				result = join(centre(nw), centre(ne), centre(sw), centre(se));
+			}
+		}
+		node.result = result;
+		return result;
+	}
+
+	/**
+	 * Advances the centre 2x2 of a 4x4 node by one generation.
+	 */
+	private Node blockSuccessor(Node node){
+		int cells = quadrantBits(node.nw, 0) | quadrantBits(node.ne, 2) | quadrantBits(node.sw, 8) | quadrantBits(node.se, 10);
+		int result = blockResults[cells];
+		return join(cellNode(result, 0), cellNode(result, 1), cellNode(result, 2), cellNode(result, 3));
+	}
+
+	/**
+	 * Gets the cells of a 2x2 node as bits of a 4x4 block, with its top left cell at the given bit.
+	 */
+	private int quadrantBits(Node quadrant, int shift){
+		return (int)(quadrant.nw.population | quadrant.ne.population << 1 | quadrant.sw.population << 4 | quadrant.se.population << 5) << shift;
+	}
+
+	private Node cellNode(int bits, int index){
+		return ((bits >> index) & 1) != 0 ? liveCell : deadCell;
+	}
+
+	/**
+	 * Fills in the table of 4x4 block results using the board's rule.
+	 */
+	private void fillBlockResults(){
+		for(int cells = 0; cells < blockResults.length; ++cells){
+			int result = 0;
+			for(int i = 0; i < 4; ++i){
+				int x = 1 + (i & 1);
+				int y = 1 + (i >> 1);
+				int neighbourCount = 0;
+				for(int dy = -1; dy <= 1; ++dy){
+					for(int dx = -1; dx <= 1; ++dx){
+						if((dx != 0 || dy != 0) && ((cells >> ((y + dy) * 4 + x + dx)) & 1) != 0){
+							neighbourCount++;
+						}
+					}
+				}
+				boolean alive = ((cells >> (y * 4 + x)) & 1) != 0;
+				if(rule.next(alive, neighbourCount)){
+					result |= 1 << i;
+				}
+			}
+			blockResults[cells] = (byte)result;
+		}
+	}
+
+	private Node centre(Node node){
+		return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+	}
+
+	/**
+	 * Checks that all of a node's live cells are in its middle half.
+	 */
+	private boolean isCentred(Node node){
+		return node.nw.population == node.nw.se.population
+			&& node.ne.population == node.ne.sw.population
+			&& node.sw.population == node.sw.ne.population
+			&& node.se.population == node.se.nw.population;
+	}
+
+	/**
+	 * Doubles the size of the root, keeping the pattern in the middle.
+	 */
+	private void expand(){
+		Node border = empty(root.level - 1);
+		originX -= 1L << (root.level - 1);
+		originY -= 1L << (root.level - 1);
+		root = join(join(border, border, border, root.nw),
+					join(border, border, root.ne, border),
+					join(border, root.sw, border, border),
+					join(root.se, border, border, border));
+	}
+
+	private Node empty(int level){
+		if(emptyNodes[level] == null){
+			emptyNodes[level] = level == 0 ? deadCell : join(empty(level - 1), empty(level - 1), empty(level - 1), empty(level - 1));
+		}
+		return emptyNodes[level];
+	}
+
+	/**
+	 * Gets the canonical node with the given quadrants, making it if it doesn't exist yet.
+	 */
+	private Node join(Node nw, Node ne, Node sw, Node se){
+		int hash = hash(nw, ne, sw, se);
+		int index = hash & (table.length - 1);
+		for(Node node = table[index]; node != null; node = node.next){
+			if(node.nw == nw && node.ne == ne && node.sw == sw && node.se == se){
+				return node;
+			}
+		}
+		Node node = new Node(nw, ne, sw, se, hash);
+		insert(node);
+		return node;
+	}
+
+	private void insert(Node node){
+		if(nodeCount >= table.length - (table.length >> 2)){
+			Node[] oldTable = table;
+			table = new Node[oldTable.length * 2];
+			for(Node chain : oldTable){
+				while(chain != null){
+					Node next = chain.next;
+					int index = chain.hash & (table.length - 1);
+					chain.next = table[index];
+					table[index] = chain;
+					chain = next;
+				}
+			}
+		}
+		int index = node.hash & (table.length - 1);
+		node.next = table[index];
+		table[index] = node;
+		nodeCount++;
+	}
+
+	private void clearResults(){
+		for(Node chain : table){
+			for(Node node = chain; node != null; node = node.next){
+				node.result = null;
+			}
+		}
+	}
+
+	/**
+	 * Evicts every node that isn't part of the current pattern, along with every remembered result.
+	 */
+	private void collect(){
+		table = new Node[table.length];
+		nodeCount = 0;
+		Arrays.fill(emptyNodes, null);
+		keep(root);
+	}
+
+	private void keep(Node node){
+		if(node.level == 0){
+			return;
+		}
+		int index = node.hash & (table.length - 1);
+		for(Node kept = table[index]; kept != null; kept = kept.next){
+			if(kept == node){
+				return;
+			}
+		}
+		keep(node.nw);
+		keep(node.ne);
+		keep(node.sw);
+		keep(node.se);
+		node.result = null;
+		insert(node);
+	}
+
+	private static int hash(Node nw, Node ne, Node sw, Node se){
+		int hash = nw.hash;
+		hash = hash * 0x9E3779B1 + ne.hash;
+		hash = hash * 0x9E3779B1 + sw.hash;
+		hash = hash * 0x9E3779B1 + se.hash;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Square of cells 2^level on a side, either a single cell or four quadrants one level down.
+	 */
+	private static final class Node{
+		final Node nw, ne, sw, se;
+		final int level;
+		final long population;
+		final int hash;
+		Node result;
+		Node next;
+
+		Node(int population, int hash){
+			this.nw = this.ne = this.sw = this.se = null;
+			this.level = 0;
+			this.population = population;
+			this.hash = hash;
+		}
+
+		Node(Node nw, Node ne, Node sw, Node se, int hash){
+			this.nw = nw;
+			this.ne = ne;
+			this.sw = sw;
+			this.se = se;
+			this.level = nw.level + 1;
+			this.population = nw.population + ne.population + sw.population + se.population;
+			this.hash = hash;
+		}
+	}
+}
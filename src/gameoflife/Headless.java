@@ -0,0 +1,395 @@
+package gameoflife;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Runs a board without any GUI, as fast as it will go, for experiments and benchmarks on machines with no display.
+ *
+ * Usage: Headless (--size WxH | --input file.life) [--seed N] [--generations N] [--impulse-frequency N]
+ *        [--impulse-strength P] [--threads N] [--output file.life] [--report file]
+ *        [--mapped file | --checkpoint file.life] [--checkpoint-every N] [--rule B3/S23]
+ *        [--metrics file [--metrics-every N]] [--on-cycle stop|skip] [--frames directory [--frames-every N] [--cell-size N]]
+ *
+ * The final board is written in the same format as File -> Save As, and a throughput report is printed at the
+ * end (and written to the report file, if there is one).
+ *
+ * A rule with more than two states, like --rule "Brian's Brain", gets a multi-state board.
+ *
+ * With --metrics the board's population, births, deaths and step times are written out every so many generations,
+ * as JSON lines if the file ends in .json and CSV otherwise.  They're also registered over JMX for the length of
+ * the run.  Only dense boards keep metrics.
+ *
+ * With --on-cycle the board is watched for settling into a still life or oscillator.  Once it has, stop ends the
+ * run there, and skip jumps straight to the last generation by only stepping the part of a period that's left
+ * over.  Neither works with impulses, which would knock the board out of its cycle.
+ *
+ * With --frames a PNG of the board is written into the directory every so many generations, named by generation.
+ * They're encoded on another thread while stepping carries on, and only a couple are held at a time.
+ *
+ * With --mapped the board is kept in a memory-mapped file instead of on the heap, for boards too big to fit there.
+ * If the file already holds a board the run carries on from it, otherwise a new one is made there, and it's
+ * checkpointed every so many generations and at the end.
+ *
+ * With --checkpoint the board is written to a .life file every so many generations, on another thread so stepping
+ * carries on meanwhile.  Each one is written next to the file and moved over it once it's done, so the file always
+ * holds a whole board to carry on from with --input.
+ *
+ * @author Folz
+ *
+ */
+public class Headless {
+	private static final String USAGE = "Usage: Headless (--size WxH | --input file.life) [--seed N] [--generations N]\n"
+									  + "                [--impulse-frequency N] [--impulse-strength P] [--threads N]\n"
+									  + "                [--output file.life] [--report file] [--mapped file | --checkpoint file.life]\n"
+									  + "                [--checkpoint-every N] [--rule B3/S23] [--metrics file [--metrics-every N]]\n"
+									  + "                [--on-cycle stop|skip] [--frames directory [--frames-every N] [--cell-size N]]";
+
+	private int xLength = 35;
+	private int yLength = 35;
+	private String inputFile;
+	private String outputFile;
+	private String reportFile;
+	private String mappedFile;
+	private String checkpointFile;
+	private long checkpointEvery = 0;
+	private Rule rule;
+	private String metricsFile;
+	private long metricsEvery = 100;
+	private String onCycle;
+	private String framesDirectory;
+	private long framesEvery = 1;
+	private int cellSize = 1;
+	private CycleDetector cycles;
+	//generations actually stepped, fewer than asked for if a cycle was skipped or stopped at
+	private long stepped;
+	private Long seed;
+	private long generations = 1000;
+	private boolean impulsing = false;
+	private int frequency = 100;
+	private double impulseStrength = 0;
+	private int threads = 1;
+
+	public static void main(String[] args) {
+		Headless run = new Headless();
+		try{
+			run.parseArguments(args);
+		}catch(IllegalArgumentException e){
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		try{
+			run.run();
+		}catch(IOException | ClassNotFoundException | IllegalArgumentException e){
+			System.err.println("Couldn't run the board: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads the command line arguments.
+	 *
+	 * @param args Command line arguments
+	 */
+	private void parseArguments(String[] args){
+		for(int i = 0; i < args.length; ++i){
+			if(i + 1 >= args.length){
+				throw new IllegalArgumentException("Missing value for " + args[i]);
+			}
+			String value = args[++i];
+			try{
+				switch(args[i - 1]){
+				case "--size":
+					String[] size = value.toLowerCase().split("x");
+					xLength = Integer.parseInt(size[0]);
+					yLength = Integer.parseInt(size[1]);
+					break;
+				case "--input":
+					inputFile = value;
+					break;
+				case "--output":
+					outputFile = value;
+					break;
+				case "--report":
+					reportFile = value;
+					break;
+				case "--seed":
+					seed = Long.parseLong(value);
+					break;
+				case "--generations":
+					generations = Long.parseLong(value);
+					break;
+				case "--impulse-frequency":
+					frequency = Integer.parseInt(value);
+					impulsing = true;
+					break;
+				case "--impulse-strength":
+					impulseStrength = Double.parseDouble(value);
+					break;
+				case "--mapped":
+					mappedFile = value;
+					break;
+				case "--checkpoint":
+					checkpointFile = value;
+					break;
+				case "--checkpoint-every":
+					checkpointEvery = Long.parseLong(value);
+					break;
+				case "--metrics":
+					metricsFile = value;
+					break;
+				case "--metrics-every":
+					metricsEvery = Long.parseLong(value);
+					break;
+				case "--on-cycle":
+					if(!value.equals("stop") && !value.equals("skip")){
+						throw new IllegalArgumentException("--on-cycle must be stop or skip");
+					}
+					onCycle = value;
+					break;
+				case "--frames":
+					framesDirectory = value;
+					break;
+				case "--frames-every":
+					framesEvery = Long.parseLong(value);
+					break;
+				case "--cell-size":
+					cellSize = Integer.parseInt(value);
+					break;
+				case "--rule":
+					rule = Rule.parse(value);
+					break;
+				case "--threads":
+					threads = Integer.parseInt(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+				}
+			}catch(NumberFormatException | ArrayIndexOutOfBoundsException e){
+				throw new IllegalArgumentException("Bad value for " + args[i - 1] + ": " + value);
+			}
+		}
+		if(xLength < 1 || yLength < 1 || generations < 0 || frequency < 1 || threads < 1 || checkpointEvery < 0 || metricsEvery < 1 || framesEvery < 1 || cellSize < 1){
+			throw new IllegalArgumentException("Sizes, frequency and threads must be positive");
+		}
+		if(checkpointFile != null && mappedFile != null){
+			throw new IllegalArgumentException("Mapped boards are checkpointed into their own file");
+		}
+		if(checkpointFile != null && checkpointEvery == 0){
+			throw new IllegalArgumentException("--checkpoint needs --checkpoint-every");
+		}
+		if(onCycle != null && impulsing){
+			throw new IllegalArgumentException("--on-cycle can't be used with impulses");
+		}
+	}
+
+	/**
+	 * Loads or makes the board, steps it, then writes out the board and the report.
+	 */
+	private void run() throws IOException, ClassNotFoundException{
+		Random random = seed == null ? new Random() : new Random(seed);
+		LifeBoard board;
+		if(mappedFile != null && new File(mappedFile).exists()){
+			board = new MappedBoard(new File(mappedFile));
+		}else if(mappedFile != null){
+			LifeBoard input = inputFile == null ? null : LifeFile.read(new File(inputFile));
+			if(input != null){
+				board = new MappedBoard(new File(mappedFile), input.getXLength(), input.getYLength());
+				copyCells(input, board);
+			}else{
+				board = new MappedBoard(new File(mappedFile), xLength, yLength);
+				board.setup(random);
+			}
+		}else if(inputFile != null){
+			board = LifeFile.read(new File(inputFile));
+		}else if(rule != null && rule.getStates() > 2){
+			board = new MultiStateBoard(xLength, yLength, rule);
+			board.setup(random);
+		}else{
+			board = new Board(xLength, yLength);
+		}
+
+		if(rule != null){
+			board.setRule(rule);
+		}
+
+		ForkJoinPool pool = null;
+		if(threads > 1 && board instanceof Board){
+			pool = new ForkJoinPool(threads);
+			((Board)board).setThreadPool(pool);
+		}else if(threads > 1 && board instanceof MappedBoard){
+			pool = new ForkJoinPool(threads);
+			((MappedBoard)board).setThreadPool(pool);
+		}else if(threads > 1 && board instanceof MultiStateBoard){
+			pool = new ForkJoinPool(threads);
+			((MultiStateBoard)board).setThreadPool(pool);
+		}
+		//a new dense board is filled once it has its pool, and the same seed fills it the same at any thread count
+		if(board instanceof Board && inputFile == null){
+			((Board)board).setup(seed == null ? random.nextLong() : seed);
+		}
+
+		PrintStream metricsOut = null;
+		boolean json = false;
+		if(metricsFile != null){
+			if(!(board instanceof Board)){
+				throw new IllegalArgumentException("Only dense boards keep metrics");
+			}
+			json = metricsFile.toLowerCase().endsWith(".json");
+			metricsOut = new PrintStream(new FileOutputStream(metricsFile));
+			if(!json){
+				metricsOut.println(BoardMetrics.csvHeader());
+			}
+		}
+		if(onCycle != null){
+			if(!(board instanceof Board)){
+				throw new IllegalArgumentException("Cycles are only detected on dense boards");
+			}
+			cycles = new CycleDetector();
+		}
+		FrameWriter frames = null;
+		if(framesDirectory != null){
+			if(!BoardImage.fits(board.getXLength(), board.getYLength(), cellSize)){
+				throw new IllegalArgumentException("Frames of a " + board.getXLength() + "x" + board.getYLength() + " board at --cell-size " + cellSize + " would be too big");
+			}
+			frames = new FrameWriter(new File(framesDirectory), cellSize);
+		}
+		CheckpointWriter checkpoints = null;
+		if(checkpointFile != null){
+			checkpoints = new CheckpointWriter(new File(checkpointFile));
+		}
+		ObjectName registered = null;
+		if(board instanceof Board){
+			try{
+				registered = ((Board)board).getMetrics().register("headless");
+			}catch(JMException e){
+				System.out.println("Couldn't register the board's metrics over JMX: " + e.getMessage());
+			}
+		}
+
+		//same order as the GUI: step, impulse if it's time, then count the generation
+		long start = System.nanoTime();
+		try{
+			for(long generation = 0; generation < generations; ++generation){
+				board.refreshBoard();
+				//counted from the board's own generation so a resumed run keeps impulsing on the same ones
+				if(impulsing && (board.getGeneration() - 1) % frequency == 0){
+					board.impulse(impulseStrength, random);
+				}
+				if(checkpointEvery > 0 && (generation + 1) % checkpointEvery == 0 && board instanceof MappedBoard){
+					((MappedBoard)board).checkpoint();
+				}
+				if(checkpoints != null && (generation + 1) % checkpointEvery == 0){
+					checkpoints.write(board);
+				}
+				if(metricsOut != null && (generation + 1) % metricsEvery == 0){
+					BoardMetrics metrics = ((Board)board).getMetrics();
+					metricsOut.println(json ? metrics.toJson() : metrics.toCsv());
+				}
+				if(frames != null && (generation + 1) % framesEvery == 0){
+					frames.write(board);
+				}
+				stepped++;
+				if(cycles != null && cycles.observe((Board)board)){
+					System.out.println("Period " + cycles.getPeriod() + " since generation " + cycles.getSinceGeneration());
+					if(onCycle.equals("stop")){
+						generations = stepped;
+						break;
+					}
+					//every whole period left brings the board back to where it is now, so only the rest needs stepping
+					long remaining = generations - stepped;
+					long leftOver = remaining % cycles.getPeriod();
+					for(long i = 0; i < leftOver; ++i){
+						board.refreshBoard();
+						stepped++;
+					}
+					((Board)board).skipGenerations(remaining - leftOver);
+					break;
+				}
+			}
+		}finally{
+			if(metricsOut != null){
+				metricsOut.close();
+			}
+			if(frames != null){
+				frames.close();
+			}
+			if(checkpoints != null){
+				checkpoints.close();
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		if(registered != null){
+			try{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+			}catch(JMException e){
+				System.out.println("Couldn't unregister the board's metrics: " + e.getMessage());
+			}
+		}
+
+		if(pool != null){
+			pool.shutdown();
+		}
+		if(outputFile != null){
+			LifeFile.write(board, new File(outputFile));
+		}
+		if(board instanceof MappedBoard){
+			((MappedBoard)board).checkpoint();
+			((MappedBoard)board).close();
+		}
+
+		report(System.out, board, elapsed);
+		if(reportFile != null){
+			try(PrintStream out = new PrintStream(new FileOutputStream(reportFile))){
+				report(out, board, elapsed);
+			}
+		}
+	}
+
+	/**
+	 * Copies the live cells of one board into another of the same size.
+	 */
+	private static void copyCells(LifeBoard from, LifeBoard to){
+		for(int y = 0; y < from.getYLength(); ++y){
+			for(int x = 0; x < from.getXLength(); ++x){
+				if(from.getCell(x, y)){
+					to.setCell(x, y, true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the throughput report for the run.
+	 *
+	 * @param out Where to write the report
+	 * @param board Board that was run
+	 * @param elapsed Time spent stepping, in nanoseconds
+	 */
+	private void report(PrintStream out, LifeBoard board, long elapsed){
+		double seconds = elapsed / 1e9;
+		double cells = (double)board.getXLength() * board.getYLength();
+		out.println("size=" + board.getXLength() + "x" + board.getYLength());
+		out.println("rule=" + board.getRule());
+		out.println("generations=" + generations);
+		if(cycles != null && cycles.isCycleFound()){
+			out.println("generations_stepped=" + stepped);
+			out.println("cycle_period=" + cycles.getPeriod());
+			out.println("cycle_since=" + cycles.getSinceGeneration());
+		}
+		out.println("threads=" + threads);
+		out.println("seconds=" + seconds);
+		out.println("generations_per_second=" + (seconds > 0 ? stepped / seconds : 0));
+		out.println("cells_per_second=" + (seconds > 0 ? cells * stepped / seconds : 0));
+	}
+}
@@ -0,0 +1,122 @@
+package gameoflife;
+
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * Common interface for the different ways of storing a Game of Life board, so the GUI doesn't need to care which
+ * one it is showing.
+ * 
+ * The board shown is always xLength by yLength cells from (0, 0), even if the implementation keeps cells outside it.
+ * 
+ * @author Folz
+ *
+ */
+public interface LifeBoard extends Serializable{
+	
+	/**
+	 * Applies an impulse to the board to switch the value of a random selection of squares
+	 * 
+	 * @param percent Strength of the impulse, should be between 0 and 1.
+	 */
+	void impulse(double percent);
+	
+	/**
+	 * Applies an impulse using the given random number generator, so it can be repeated.
+	 * 
+	 * @param percent Strength of the impulse, should be between 0 and 1.
+	 * @param random Random number generator to use
+	 */
+	void impulse(double percent, Random random);
+	
+	/**
+	 * Method to initialize the board with random values.
+	 */
+	void setup();
+	
+	/**
+	 * Method to initialize the board with random values from the given random number generator, so it can be repeated.
+	 * 
+	 * @param random Random number generator to use
+	 */
+	void setup(Random random);
+	
+	/**
+	 * Iterates the generation of the board by one.
+	 */
+	void refreshBoard();
+	
+	/**
+	 * Clears the board of all living cells.
+	 */
+	void clearBoard();
+	
+	/**
+	 * Checks if a cell is alive.
+	 * 
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @return Returns true if the cell is alive
+	 */
+	boolean getCell(int x, int y);
+	
+	/**
+	 * Sets a cell to be alive or dead.
+	 * 
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @param alive New state of the cell
+	 */
+	void setCell(int x, int y, boolean alive);
+	
+	/**
+	 * Switches a cell from alive to dead, or from dead to alive.
+	 * 
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 */
+	void toggleCell(int x, int y);
+	
+	/**
+	 * Gets the number of generations this board has been stepped through.
+	 * 
+	 * @return Returns the generation count
+	 */
+	long getGeneration();
+	
+	/**
+	 * Gets the rule the board is stepped by.
+	 * 
+	 * @return Returns the rule
+	 */
+	Rule getRule();
+	
+	/**
+	 * Sets the rule the board is stepped by, from the next generation on.
+	 * 
+	 * @param rule New rule
+	 * @throws IllegalArgumentException If this kind of board can't step by the rule
+	 */
+	void setRule(Rule rule);
+	
+	/**
+	 * Copies the cells on display into a snapshot.
+	 * 
+	 * @param snapshot Snapshot to fill
+	 */
+	void copyTo(BoardSnapshot snapshot);
+	
+	/**
+	 * Makes a copy of the board that can be stepped and changed without affecting this one.
+	 * 
+	 * @return Returns the copy, with the same cells, rule and generation
+	 * @throws UnsupportedOperationException If this kind of board can't be copied
+	 */
+	LifeBoard copy();
+	
+	int getXLength();
+	
+	int getYLength();
+	
+	void setBoardSize(int xLength, int yLength);
+}
@@ -0,0 +1,564 @@
+package gameoflife;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes boards in the binary .life format.
+ *
+ * A file is a fixed header followed by the cell data and a CRC32 of the cell data.  All numbers are big-endian.
+ *
+ *   int   magic, "LIFE"
+ *   short version
+ *   byte  kind of board: 0 for a Board, 1 for a wrapped SparseBoard, 2 for an unbounded SparseBoard, 3 for a
+ *         MultiStateBoard
+ *   byte  encoding of the cells: 0 packed, 1 zero-run, 2 cell list, 3 states
+ *   byte  flags: bit 0 set if there is a checksum at the end
+ *   int   xLength
+ *   int   yLength
+ *   long  generation
+ *   short length of the rule, then the rule in B/S notation as ASCII (from version 2, before that it's B3/S23)
+ *
+ * Packed data is yLength rows of (xLength + 63) / 64 longs, bit i of word w being the cell at x = w*64 + i, the
+ * same as Board keeps them in memory.  Zero-run data is the same words, as records of an int count of zero words,
+ * an int count of literal words, then the literal words, until every word is accounted for.  A cell list is an int
+ * count followed by an int x and y for each live cell, which is the only way to keep the cells that have wandered
+ * off the shown part of an unbounded board.  States are yLength rows of xLength bytes, the state of each cell,
+ * for boards with more than two.
+ *
+ * Everything goes through a small buffer on a FileChannel, a row at a time, so a board never needs a second copy
+ * of itself on the heap to be saved or loaded.  Files saved with Java serialization before this format still load.
+ *
+ * @author Folz
+ *
+ */
+public final class LifeFile {
+	private static final int MAGIC = 0x4C494645;
+	private static final short VERSION = 2;
+	//what every ObjectOutputStream starts with, for spotting old files
+	private static final short SERIALIZATION_MAGIC = (short)0xACED;
+
+	private static final byte KIND_GRID = 0;
+	private static final byte KIND_SPARSE_WRAPPED = 1;
+	private static final byte KIND_SPARSE_UNBOUNDED = 2;
+	private static final byte KIND_MULTI_STATE = 3;
+
+	private static final byte ENCODING_PACKED = 0;
+	private static final byte ENCODING_ZERO_RUN = 1;
+	private static final byte ENCODING_CELLS = 2;
+	private static final byte ENCODING_STATES = 3;
+
+	private static final byte FLAG_CHECKSUM = 1;
+
+	private static final int HEADER_SIZE = 4 + 2 + 1 + 1 + 1 + 4 + 4 + 8;
+	private static final int BUFFER_SIZE = 1 << 16;
+	//longest run of literal words before a new record is started
+	private static final int MAX_LITERALS = 1024;
+	//a transition table of 36 states is the longest rule there can be
+	private static final int MAX_RULE_LENGTH = 1024;
+
+	private LifeFile(){
+	}
+
+	/**
+	 * Writes a board to a file, replacing anything already there.  Grid boards are written zero-run encoded if
+	 * enough of the board is empty for that to pay off, packed otherwise.
+	 *
+	 * @param board Board to write
+	 * @param file File to write to
+	 */
+	public static void write(LifeBoard board, File file) throws IOException{
+		byte kind;
+		byte encoding;
+		if(board instanceof SparseBoard){
+			kind = ((SparseBoard)board).isWrapped() ? KIND_SPARSE_WRAPPED : KIND_SPARSE_UNBOUNDED;
+			encoding = ENCODING_CELLS;
+		}else if(board instanceof MultiStateBoard){
+			kind = KIND_MULTI_STATE;
+			encoding = ENCODING_STATES;
+		}else{
+			kind = KIND_GRID;
+			encoding = countZeroWords(board) * 4 >= (long)board.getYLength() * wordsPerRow(board) ? ENCODING_ZERO_RUN : ENCODING_PACKED;
+		}
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)){
+			Output out = new Output(channel);
+			out.buffer.putInt(MAGIC);
+			out.buffer.putShort(VERSION);
+			out.buffer.put(kind);
+			out.buffer.put(encoding);
+			out.buffer.put(FLAG_CHECKSUM);
+			out.buffer.putInt(board.getXLength());
+			out.buffer.putInt(board.getYLength());
+			out.buffer.putLong(board.getGeneration());
+			byte[] rule = board.getRule().toString().getBytes(StandardCharsets.US_ASCII);
+			out.buffer.putShort((short)rule.length);
+			out.buffer.put(rule);
+			out.flush();
+			//only the cell data goes into the checksum
+			out.crc.reset();
+
+			switch(encoding){
+			case ENCODING_CELLS:
+				writeCells((SparseBoard)board, out);
+				break;
+			case ENCODING_STATES:
+				writeStates((MultiStateBoard)board, out);
+				break;
+			case ENCODING_ZERO_RUN:
+				writeZeroRun(board, out);
+				break;
+			default:
+				writePacked(board, out);
+			}
+			out.flush();
+			out.buffer.putInt((int)out.crc.getValue());
+			out.flush();
+		}
+	}
+
+	/**
+	 * Reads a board from a file, in either this format or the old serialized one.
+	 *
+	 * @param file File to read
+	 * @return Returns the board
+	 * @throws IOException If the file can't be read, or is neither kind of .life file
+	 * @throws ClassNotFoundException If an old serialized file holds a class that doesn't exist anymore
+	 */
+	public static LifeBoard read(File file) throws IOException, ClassNotFoundException{
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			Input in = new Input(channel);
+			in.require(2);
+			if(in.buffer.getShort(0) == SERIALIZATION_MAGIC){
+				return readSerialized(channel);
+			}
+
+			in.require(HEADER_SIZE);
+			if(in.buffer.getInt() != MAGIC){
+				throw new IOException("Not a .life file");
+			}
+			short version = in.buffer.getShort();
+			if(version > VERSION){
+				throw new IOException("Saved by a newer version, file format " + version);
+			}
+			byte kind = in.buffer.get();
+			byte encoding = in.buffer.get();
+			byte flags = in.buffer.get();
+			int xLength = in.buffer.getInt();
+			int yLength = in.buffer.getInt();
+			long generation = in.buffer.getLong();
+			if(xLength < 1 || yLength < 1){
+				throw new IOException("Bad board size " + xLength + "x" + yLength);
+			}
+			Rule rule = Rule.CONWAY;
+			if(version >= 2){
+				in.require(2);
+				short ruleLength = in.buffer.getShort();
+				if(ruleLength < 0 || ruleLength > MAX_RULE_LENGTH){
+					throw new IOException("Bad rule length " + ruleLength);
+				}
+				byte[] ruleText = new byte[ruleLength];
+				in.require(ruleText.length);
+				in.buffer.get(ruleText);
+				try{
+					rule = Rule.parse(new String(ruleText, StandardCharsets.US_ASCII));
+				}catch(IllegalArgumentException e){
+					throw new IOException(e.getMessage());
+				}
+			}
+			in.startChecksum();
+
+			LifeBoard board;
+			if(kind == KIND_GRID){
+				Board grid = new Board(xLength, yLength);
+				//before the cells go in, since the generation picks which buffer is live
+				grid.setGeneration(generation);
+				board = grid;
+			}else if(kind == KIND_SPARSE_WRAPPED || kind == KIND_SPARSE_UNBOUNDED){
+				SparseBoard sparse = new SparseBoard(xLength, yLength, kind == KIND_SPARSE_WRAPPED);
+				sparse.setGeneration(generation);
+				board = sparse;
+			}else if(kind == KIND_MULTI_STATE){
+				MultiStateBoard multiState = new MultiStateBoard(xLength, yLength, rule);
+				multiState.setGeneration(generation);
+				board = multiState;
+			}else{
+				throw new IOException("Unknown kind of board " + kind);
+			}
+			try{
+				board.setRule(rule);
+			}catch(IllegalArgumentException e){
+				throw new IOException(e.getMessage());
+			}
+
+			switch(encoding){
+			case ENCODING_PACKED:
+				readPacked(board, in);
+				break;
+			case ENCODING_ZERO_RUN:
+				readZeroRun(board, in);
+				break;
+			case ENCODING_CELLS:
+				readCells(board, in);
+				break;
+			case ENCODING_STATES:
+				if(!(board instanceof MultiStateBoard)){
+					throw new IOException("Only a multi-state board can have states");
+				}
+				readStates((MultiStateBoard)board, in);
+				break;
+			default:
+				throw new IOException("Unknown cell encoding " + encoding);
+			}
+
+			if((flags & FLAG_CHECKSUM) != 0){
+				int expected = (int)in.finishChecksum();
+				in.require(4);
+				if(in.buffer.getInt() != expected){
+					throw new IOException("Checksum doesn't match, the file is damaged");
+				}
+			}
+			return board;
+		}
+	}
+
+	/**
+	 * Reads a file saved with Java serialization, the way Load used to.
+	 */
+	private static LifeBoard readSerialized(FileChannel channel) throws IOException, ClassNotFoundException{
+		channel.position(0);
+		//not closed here, closing the channel does that
+		InputStream stream = Channels.newInputStream(channel);
+		ObjectInputStream ois = new ObjectInputStream(stream);
+		return (LifeBoard)ois.readObject();
+	}
+
+	private static void writePacked(LifeBoard board, Output out) throws IOException{
+		long[] row = new long[wordsPerRow(board)];
+		for(int y = 0; y < board.getYLength(); ++y){
+			copyRowTo(board, y, row);
+			for(long word : row){
+				out.require(8);
+				out.buffer.putLong(word);
+			}
+		}
+	}
+
+	private static void readPacked(LifeBoard board, Input in) throws IOException{
+		long[] row = new long[wordsPerRow(board)];
+		for(int y = 0; y < board.getYLength(); ++y){
+			for(int w = 0; w < row.length; ++w){
+				in.require(8);
+				row[w] = in.buffer.getLong();
+			}
+			copyRowFrom(board, y, row);
+		}
+	}
+
+	/**
+	 * Writes the words of the board as runs of zero words and runs of literal ones.  Runs carry on across rows.
+	 */
+	private static void writeZeroRun(LifeBoard board, Output out) throws IOException{
+		long[] row = new long[wordsPerRow(board)];
+		long[] literals = new long[MAX_LITERALS];
+		int zeros = 0;
+		int literalCount = 0;
+		for(int y = 0; y < board.getYLength(); ++y){
+			copyRowTo(board, y, row);
+			for(long word : row){
+				if(word == 0){
+					if(literalCount > 0){
+						writeRun(out, zeros, literals, literalCount);
+						zeros = 0;
+						literalCount = 0;
+					}
+					zeros++;
+				}else{
+					literals[literalCount++] = word;
+					if(literalCount == MAX_LITERALS){
+						writeRun(out, zeros, literals, literalCount);
+						zeros = 0;
+						literalCount = 0;
+					}
+				}
+			}
+		}
+		if(zeros > 0 || literalCount > 0){
+			writeRun(out, zeros, literals, literalCount);
+		}
+	}
+
+	private static void writeRun(Output out, int zeros, long[] literals, int literalCount) throws IOException{
+		out.require(8);
+		out.buffer.putInt(zeros);
+		out.buffer.putInt(literalCount);
+		for(int i = 0; i < literalCount; ++i){
+			out.require(8);
+			out.buffer.putLong(literals[i]);
+		}
+	}
+
+	private static void readZeroRun(LifeBoard board, Input in) throws IOException{
+		long[] row = new long[wordsPerRow(board)];
+		long remaining = (long)board.getYLength() * row.length;
+		int y = 0;
+		int w = 0;
+		int zeros = 0;
+		int literals = 0;
+		while(remaining > 0){
+			if(zeros == 0 && literals == 0){
+				in.require(8);
+				zeros = in.buffer.getInt();
+				literals = in.buffer.getInt();
+				if(zeros < 0 || literals < 0 || (long)zeros + literals > remaining || zeros + literals == 0){
+					throw new IOException("Bad run in the cell data");
+				}
+			}
+			if(zeros > 0){
+				row[w] = 0;
+				zeros--;
+			}else{
+				in.require(8);
+				row[w] = in.buffer.getLong();
+				literals--;
+			}
+			remaining--;
+			if(++w == row.length){
+				copyRowFrom(board, y++, row);
+				w = 0;
+			}
+		}
+	}
+
+	private static void writeCells(SparseBoard board, Output out) throws IOException{
+		LongIntMap cells = board.getLiveCells();
+		out.require(4);
+		out.buffer.putInt(cells.size());
+		for(int slot = 0; slot < cells.getCapacity(); ++slot){
+			if(cells.isUsed(slot)){
+				long cell = cells.keyAt(slot);
+				out.require(8);
+				out.buffer.putInt(SparseBoard.keyX(cell));
+				out.buffer.putInt(SparseBoard.keyY(cell));
+			}
+		}
+	}
+
+	private static void readCells(LifeBoard board, Input in) throws IOException{
+		in.require(4);
+		int count = in.buffer.getInt();
+		if(count < 0){
+			throw new IOException("Bad cell count " + count);
+		}
+		boolean bounded = !(board instanceof SparseBoard) || ((SparseBoard)board).isWrapped();
+		for(int i = 0; i < count; ++i){
+			in.require(8);
+			int x = in.buffer.getInt();
+			int y = in.buffer.getInt();
+			if(bounded && (x < 0 || y < 0 || x >= board.getXLength() || y >= board.getYLength())){
+				throw new IOException("Cell (" + x + ", " + y + ") is off the board");
+			}
+			board.setCell(x, y, true);
+		}
+	}
+
+	private static void writeStates(MultiStateBoard board, Output out) throws IOException{
+		byte[] row = new byte[board.getXLength()];
+		for(int y = 0; y < board.getYLength(); ++y){
+			board.copyStatesTo(y, row);
+			//rows can be wider than the buffer, so they go in a bufferful at a time
+			for(int x = 0; x < row.length; ){
+				out.require(1);
+				int length = Math.min(out.buffer.remaining(), row.length - x);
+				out.buffer.put(row, x, length);
+				x += length;
+			}
+		}
+	}
+
+	private static void readStates(MultiStateBoard board, Input in) throws IOException{
+		byte[] row = new byte[board.getXLength()];
+		int states = board.getRule().getStates();
+		for(int y = 0; y < board.getYLength(); ++y){
+			for(int x = 0; x < row.length; ){
+				in.require(1);
+				int length = Math.min(in.buffer.remaining(), row.length - x);
+				in.buffer.get(row, x, length);
+				x += length;
+			}
+			for(byte state : row){
+				if((state & 0xFF) >= states){
+					throw new IOException("The rule has no state " + (state & 0xFF));
+				}
+			}
+			board.copyStatesFrom(y, row);
+		}
+	}
+
+	/**
+	 * Counts the words of a grid board that have no live cells in them.
+	 */
+	private static long countZeroWords(LifeBoard board){
+		long[] row = new long[wordsPerRow(board)];
+		long zeros = 0;
+		for(int y = 0; y < board.getYLength(); ++y){
+			copyRowTo(board, y, row);
+			for(long word : row){
+				if(word == 0){
+					zeros++;
+				}
+			}
+		}
+		return zeros;
+	}
+
+	private static int wordsPerRow(LifeBoard board){
+		return (board.getXLength() + 63) >>> 6;
+	}
+
+	/**
+	 * Gets a row of any board as packed words, straight out of a Board or MappedBoard or a cell at a time otherwise.
+	 */
+	private static void copyRowTo(LifeBoard board, int y, long[] row){
+		if(board instanceof Board){
+			((Board)board).copyRowTo(y, row);
+			return;
+		}
+		if(board instanceof MappedBoard){
+			((MappedBoard)board).copyRowTo(y, row);
+			return;
+		}
+		for(int w = 0; w < row.length; ++w){
+			long word = 0;
+			int end = Math.min(64, board.getXLength() - w * 64);
+			for(int i = 0; i < end; ++i){
+				if(board.getCell(w * 64 + i, y)){
+					word |= 1L << i;
+				}
+			}
+			row[w] = word;
+		}
+	}
+
+	/**
+	 * Puts a row of packed words into any board, straight into a Board or a cell at a time otherwise.
+	 */
+	private static void copyRowFrom(LifeBoard board, int y, long[] row){
+		if(board instanceof Board){
+			((Board)board).copyRowFrom(y, row);
+			return;
+		}
+		for(int w = 0; w < row.length; ++w){
+			long word = row[w];
+			while(word != 0){
+				int i = Long.numberOfTrailingZeros(word);
+				if(w * 64 + i < board.getXLength()){
+					board.setCell(w * 64 + i, y, true);
+				}
+				word &= word - 1;
+			}
+		}
+	}
+
+	/**
+	 * Buffer in front of a channel being written, keeping a running checksum of everything that goes through it.
+	 */
+	private static class Output{
+		final FileChannel channel;
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		final CRC32 crc = new CRC32();
+
+		Output(FileChannel channel){
+			this.channel = channel;
+		}
+
+		/**
+		 * Makes room in the buffer for a number of bytes, writing out what's there if it's too full.
+		 */
+		void require(int bytes) throws IOException{
+			if(buffer.remaining() < bytes){
+				flush();
+			}
+		}
+
+		void flush() throws IOException{
+			buffer.flip();
+			ByteBuffer checked = buffer.duplicate();
+			crc.update(checked);
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Buffer in front of a channel being read.  The checksum covers everything consumed between startChecksum
+	 * and finishChecksum.
+	 */
+	private static class Input{
+		final FileChannel channel;
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		final CRC32 crc = new CRC32();
+		private int checkedUpTo = -1;
+
+		Input(FileChannel channel){
+			this.channel = channel;
+			buffer.flip();
+		}
+
+		/**
+		 * Makes sure a number of bytes are waiting in the buffer, reading more from the channel if not.
+		 */
+		void require(int bytes) throws IOException{
+			if(buffer.remaining() >= bytes){
+				return;
+			}
+			updateChecksum();
+			buffer.compact();
+			while(buffer.position() < bytes){
+				if(channel.read(buffer) < 0){
+					throw new IOException("File ends too soon");
+				}
+			}
+			buffer.flip();
+			if(checkedUpTo >= 0){
+				checkedUpTo = 0;
+			}
+		}
+
+		void startChecksum(){
+			crc.reset();
+			checkedUpTo = buffer.position();
+		}
+
+		long finishChecksum(){
+			updateChecksum();
+			checkedUpTo = -1;
+			return crc.getValue();
+		}
+
+		/**
+		 * Adds the bytes consumed since the last update to the checksum.
+		 */
+		private void updateChecksum(){
+			if(checkedUpTo < 0){
+				return;
+			}
+			ByteBuffer consumed = buffer.duplicate();
+			consumed.position(checkedUpTo);
+			consumed.limit(buffer.position());
+			crc.update(consumed);
+			checkedUpTo = buffer.position();
+		}
+	}
+}
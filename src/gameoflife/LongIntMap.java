@@ -0,0 +1,200 @@
+package gameoflife;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to non-zero int values, with no boxing.  A value of 0 means the key
+ * isn't there, so the same class works as a set (store 1) or as a counter (increment).
+ *
+ * Slots can be walked directly with getCapacity, isUsed, keyAt and valueAt.
+ *
+ * @author Folz
+ *
+ */
+class LongIntMap implements Serializable{
+	private static final long serialVersionUID = 1L;
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private int[] values;
+	private int size = 0;
+
+	public LongIntMap(){
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Constructor that sizes the map to hold a number of entries without growing.
+	 *
+	 * @param expectedSize Number of entries expected
+	 */
+	public LongIntMap(int expectedSize){
+		int capacity = capacityFor(expectedSize);
+		keys = new long[capacity];
+		values = new int[capacity];
+	}
+
+	/**
+	 * Gets the smallest capacity that holds a number of entries without growing.
+	 */
+	private static int capacityFor(int expectedSize){
+		int capacity = MIN_CAPACITY;
+		while(capacity * 3 / 4 < expectedSize){
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Gets the value of a key.
+	 *
+	 * @param key Key to look up
+	 * @return Returns the value, or 0 if the key isn't in the map
+	 */
+	public int get(long key){
+		int mask = keys.length - 1;
+		for(int i = slot(key, mask); values[i] != 0; i = (i + 1) & mask){
+			if(keys[i] == key){
+				return values[i];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Sets the value of a key.  Setting it to 0 removes it.
+	 *
+	 * @param key Key to set
+	 * @param value New value
+	 */
+	public void put(long key, int value){
+		if(value == 0){
+			remove(key);
+			return;
+		}
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		for(; values[i] != 0; i = (i + 1) & mask){
+			if(keys[i] == key){
+				values[i] = value;
+				return;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if(++size > keys.length * 3 / 4){
+			resize(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Adds one to the value of a key, adding it to the map if it isn't there.
+	 *
+	 * @param key Key to count
+	 */
+	public void increment(long key){
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		for(; values[i] != 0; i = (i + 1) & mask){
+			if(keys[i] == key){
+				values[i]++;
+				return;
+			}
+		}
+		keys[i] = key;
+		values[i] = 1;
+		if(++size > keys.length * 3 / 4){
+			resize(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Removes a key from the map.
+	 *
+	 * @param key Key to remove
+	 * @return Returns the value it had, or 0 if it wasn't there
+	 */
+	public int remove(long key){
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		for(; values[i] != 0; i = (i + 1) & mask){
+			if(keys[i] == key){
+				int old = values[i];
+				//shift the rest of the probe chain back so nothing gets cut off from its slot
+				int gap = i;
+				for(int j = (gap + 1) & mask; values[j] != 0; j = (j + 1) & mask){
+					int home = slot(keys[j], mask);
+					if(((j - home) & mask) >= ((j - gap) & mask)){
+						keys[gap] = keys[j];
+						values[gap] = values[j];
+						gap = j;
+					}
+				}
+				values[gap] = 0;
+				size--;
+				return old;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Removes everything.  The capacity is kept if the map was at least an eighth full, since it'll likely fill
+	 * up the same way again, otherwise the table shrinks to what the entries it had would need.  Either way
+	 * clearing costs about as much as the entries there were, not the most the map ever held.
+	 */
+	public void clear(){
+		if(size * 8L < keys.length && keys.length > MIN_CAPACITY){
+			int capacity = capacityFor(size);
+			keys = new long[capacity];
+			values = new int[capacity];
+		}else{
+			Arrays.fill(values, 0);
+		}
+		size = 0;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public int getCapacity(){
+		return keys.length;
+	}
+
+	public boolean isUsed(int slot){
+		return values[slot] != 0;
+	}
+
+	public long keyAt(int slot){
+		return keys[slot];
+	}
+
+	public int valueAt(int slot){
+		return values[slot];
+	}
+
+	private void resize(int capacity){
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[capacity];
+		values = new int[capacity];
+		int mask = capacity - 1;
+		for(int j = 0; j < oldKeys.length; ++j){
+			if(oldValues[j] != 0){
+				int i = slot(oldKeys[j], mask);
+				while(values[i] != 0){
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private static int slot(long key, int mask){
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int)(hash ^ (hash >>> 32)) & mask;
+	}
+}
@@ -0,0 +1,510 @@
+package gameoflife;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Board whose two generation buffers live in a memory-mapped file instead of on the heap, for boards far too big
+ * to fit there.  Cells are bit-packed the same way Board packs them, and the operating system pages them in and
+ * out as they're stepped.
+ *
+ * The file is a small header holding the size, generation and rule, then the two buffers one after the other.  The
+ * header is big-endian and the cell words little-endian, whatever machine wrote them, so a file can be carried on
+ * from anywhere.  The generation picks which buffer is live, and it's updated in the header after every generation,
+ * so a process that dies can pick up from the last generation it finished just by opening the file again.
+ * checkpoint() forces everything out to disk, so that it survives the machine going down too, as long as nothing is
+ * stepped between the checkpoint and the crash.
+ *
+ * Each buffer is mapped in chunks of whole rows, since a single mapping can't be bigger than 2GB.  Stepping goes
+ * row by row, with a rolling window of three rows copied onto the heap, and can be split into row bands on a
+ * thread pool like Board.
+ *
+ * @author Folz
+ *
+ */
+public class MappedBoard implements LifeBoard, Closeable{
+	private static final long serialVersionUID = 1L;
+
+	private static final int MAGIC = 0x4C49464D;
+	//version 2 fixed the cell words as little-endian, version 1 wrote them in whatever order the machine used
+	private static final short VERSION = 2;
+	private static final int GENERATION_OFFSET = 16;
+	//length of the rule in B/S notation, then the rule itself
+	private static final int RULE_OFFSET = 24;
+	//the buffers start after the header, on a cache line
+	private static final int HEADER_SIZE = 64;
+	private static final long MAX_CHUNK_BYTES = 1L << 30;
+	private static final int DEFAULT_BAND_HEIGHT = 1024;
+
+	private final File file;
+	private transient int xLength;
+	private transient int yLength;
+	private transient int wordsPerRow;
+	private transient long lastWordMask;
+	private transient long generation;
+	private transient Rule rule = Rule.CONWAY;
+	private transient int chunkRows;
+	private transient ByteOrder cellOrder = ByteOrder.LITTLE_ENDIAN;
+	private transient FileChannel channel;
+	private transient MappedByteBuffer header;
+	//mappings[buffer][chunk], buffer generation & 1 is the live one, and chunks are the same read as longs
+	private transient MappedByteBuffer[][] mappings;
+	private transient LongBuffer[][] chunks;
+	private transient ForkJoinPool pool;
+	private transient int bandHeight = DEFAULT_BAND_HEIGHT;
+
+	/**
+	 * Constructor that makes a new, empty board in a file, replacing anything already in it.
+	 *
+	 * @param file File to keep the board in
+	 * @param xLength Size in the X direction.
+	 * @param yLength Size in the Y direction.
+	 */
+	public MappedBoard(File file, int xLength, int yLength) throws IOException{
+		if(xLength < 1 || yLength < 1){
+			throw new IllegalArgumentException("Board size must be positive");
+		}
+		this.file = file;
+		this.xLength = xLength;
+		this.yLength = yLength;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try{
+			map(true);
+		}catch(Throwable e){
+			//like open, the file isn't left open whatever went wrong, and neither is a board half made
+			channel.close();
+			file.delete();
+			throw e;
+		}
+		header.putInt(0, MAGIC);
+		header.putShort(4, VERSION);
+		header.putInt(8, xLength);
+		header.putInt(12, yLength);
+		header.putLong(GENERATION_OFFSET, 0);
+		writeRule();
+	}
+
+	/**
+	 * Constructor that picks up a board left in a file by an earlier run.
+	 *
+	 * @param file File the board is kept in
+	 */
+	public MappedBoard(File file) throws IOException{
+		this.file = file;
+		open();
+	}
+
+	/**
+	 * Opens the file and reads the size and generation back out of its header.
+	 */
+	private void open() throws IOException{
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try{
+			MappedByteBuffer existing = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE));
+			if(existing.capacity() < HEADER_SIZE || existing.getInt(0) != MAGIC){
+				throw new IOException("Not a mapped board file");
+			}
+			if(existing.getShort(4) > VERSION){
+				throw new IOException("Made by a newer version, file format " + existing.getShort(4));
+			}
+			//the best guess for an old file is that it was made on this machine
+			cellOrder = existing.getShort(4) < 2 ? ByteOrder.nativeOrder() : ByteOrder.LITTLE_ENDIAN;
+			xLength = existing.getInt(8);
+			yLength = existing.getInt(12);
+			generation = existing.getLong(GENERATION_OFFSET);
+			byte[] ruleText = new byte[existing.get(RULE_OFFSET)];
+			for(int i = 0; i < ruleText.length; ++i){
+				ruleText[i] = existing.get(RULE_OFFSET + 1 + i);
+			}
+			try{
+				rule = ruleText.length == 0 ? Rule.CONWAY : Rule.parse(new String(ruleText, StandardCharsets.US_ASCII));
+			}catch(IllegalArgumentException e){
+				throw new IOException("Mapped board file has a bad rule: " + e.getMessage(), e);
+			}
+			map(false);
+		}catch(Throwable e){
+			//whatever went wrong, the file isn't left open
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Works out the layout of the file from the board's size and maps all of it.
+	 *
+	 * @param create True if the file is new and needs growing to fit the board, which fills it with zeros
+	 */
+	private void map(boolean create) throws IOException{
+		wordsPerRow = (xLength + 63) >>> 6;
+		lastWordMask = -1L >>> (wordsPerRow * 64 - xLength);
+		long rowBytes = wordsPerRow * 8L;
+		long bufferBytes = rowBytes * yLength;
+		chunkRows = (int)Math.max(1, Math.min(yLength, MAX_CHUNK_BYTES / rowBytes));
+		int chunkCount = (yLength + chunkRows - 1) / chunkRows;
+
+		if(create){
+			channel.write(ByteBuffer.wrap(new byte[1]), HEADER_SIZE + 2 * bufferBytes - 1);
+		}else if(channel.size() < HEADER_SIZE + 2 * bufferBytes){
+			throw new IOException("Mapped board file is too short for a " + xLength + "x" + yLength + " board");
+		}
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		mappings = new MappedByteBuffer[2][chunkCount];
+		chunks = new LongBuffer[2][chunkCount];
+		for(int buffer = 0; buffer < 2; ++buffer){
+			long start = HEADER_SIZE + buffer * bufferBytes;
+			for(int chunk = 0; chunk < chunkCount; ++chunk){
+				int rows = Math.min(chunkRows, yLength - chunk * chunkRows);
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, start + chunk * chunkRows * rowBytes, rows * rowBytes);
+				mappings[buffer][chunk] = mapped;
+				chunks[buffer][chunk] = mapped.order(cellOrder).asLongBuffer();
+			}
+		}
+	}
+
+	@Override
+	public void impulse(double percent){
+		impulse(percent, new Random());
+	}
+
+	@Override
+	public void impulse(double percent, Random random){
+		if(percent <= 0){
+			return;
+		}
+		//only the rows with a flipped cell in them are read and written back
+		long[] row = new long[wordsPerRow];
+		LongBuffer[] live = views(generation);
+		double logMiss = Math.log(1 - percent);
+		int y = -1;
+		for(long i = Board.cellsToSkip(random, logMiss); i < (long)xLength * yLength; i += 1 + Board.cellsToSkip(random, logMiss)){
+			if(i / xLength != y){
+				if(y >= 0){
+					writeRow(live, y, row);
+				}
+				y = (int)(i / xLength);
+				readRow(live, y, row, 0);
+			}
+			int x = (int)(i % xLength);
+			row[x >>> 6] ^= 1L << x;
+		}
+		if(y >= 0){
+			writeRow(live, y, row);
+		}
+	}
+
+	@Override
+	public void setup(){
+		setup(new Random());
+	}
+
+	/**
+	 * Fills the board with random values.  Same cells as Board.setup for the same random number generator.
+	 */
+	@Override
+	public void setup(Random random){
+		long[] row = new long[wordsPerRow];
+		LongBuffer[] live = views(generation);
+		for(int y = 0; y < yLength; ++y){
+			Arrays.fill(row, 0L);
+			for(int x = 0; x < xLength; ++x){
+				if(random.nextDouble() < .2){
+					row[x >>> 6] |= 1L << x;
+				}
+			}
+			writeRow(live, y, row);
+		}
+	}
+
+	/**
+	 * Iterates the generation of the board by one, and records the new generation in the file's header.
+	 */
+	@Override
+	public void refreshBoard(){
+		if(pool != null && yLength > bandHeight){
+			pool.invoke(new BandTask(0, yLength));
+		}else{
+			stepRows(0, yLength);
+		}
+		++generation;
+		header.putLong(GENERATION_OFFSET, generation);
+	}
+
+	/**
+	 * Computes the next generation of a range of rows.  The row being computed and the ones either side of it are
+	 * kept in a window on the heap, which moves down one row at a time, so each row is only read from the file once.
+	 *
+	 * @param fromY First row to compute
+	 * @param toY Row to stop before
+	 */
+	private void stepRows(int fromY, int toY){
+		LongBuffer[] current = views(generation);
+		LongBuffer[] next = views(generation + 1);
+		long[] window = new long[3 * wordsPerRow];
+		long[] nextRow = new long[wordsPerRow];
+
+		//slots of the window holding the rows above, at and below y
+		int above = 0;
+		int row = wordsPerRow;
+		int below = 2 * wordsPerRow;
+		readRow(current, fromY == 0 ? yLength - 1 : fromY - 1, window, above);
+		readRow(current, fromY, window, row);
+		readRow(current, fromY == yLength - 1 ? 0 : fromY + 1, window, below);
+
+		for(int y = fromY; y < toY; ++y){
+			if(y > fromY){
+				//slide the window down a row, reusing the slot of the row that fell off the top
+				int freed = above;
+				above = row;
+				row = below;
+				below = freed;
+				readRow(current, y == yLength - 1 ? 0 : y + 1, window, below);
+			}
+			for(int w = 0; w < wordsPerRow; ++w){
+				nextRow[w] = Board.stepWord(window, above, row, below, w, wordsPerRow, xLength, rule);
+			}
+			nextRow[wordsPerRow - 1] &= lastWordMask;
+			writeRow(next, y, nextRow);
+		}
+	}
+
+	/**
+	 * Task that steps a band of rows, splitting itself in half until the bands are no taller than bandHeight.
+	 */
+	private class BandTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		private final int fromY;
+		private final int toY;
+
+		BandTask(int fromY, int toY){
+			this.fromY = fromY;
+			this.toY = toY;
+		}
+
+		@Override
+		protected void compute(){
+			if(toY - fromY <= bandHeight){
+				stepRows(fromY, toY);
+			}else{
+				int mid = fromY + (toY - fromY) / 2;
+				invokeAll(new BandTask(fromY, mid), new BandTask(mid, toY));
+			}
+		}
+	}
+
+	/**
+	 * Gets views of one of the buffers with their own positions, so different threads can read and write rows
+	 * through them at the same time.
+	 */
+	private LongBuffer[] views(long generation){
+		LongBuffer[] buffer = chunks[(int)(generation & 1)];
+		LongBuffer[] views = new LongBuffer[buffer.length];
+		for(int i = 0; i < buffer.length; ++i){
+			views[i] = buffer[i].duplicate();
+		}
+		return views;
+	}
+
+	private void readRow(LongBuffer[] views, int y, long[] words, int offset){
+		LongBuffer chunk = views[y / chunkRows];
+		chunk.position((y % chunkRows) * wordsPerRow);
+		chunk.get(words, offset, wordsPerRow);
+	}
+
+	private void writeRow(LongBuffer[] views, int y, long[] words){
+		LongBuffer chunk = views[y / chunkRows];
+		chunk.position((y % chunkRows) * wordsPerRow);
+		chunk.put(words, 0, wordsPerRow);
+	}
+
+	@Override
+	public void clearBoard(){
+		long[] row = new long[wordsPerRow];
+		LongBuffer[] live = views(generation);
+		for(int y = 0; y < yLength; ++y){
+			writeRow(live, y, row);
+		}
+	}
+
+	@Override
+	public boolean getCell(int x, int y){
+		return (word(y, x >>> 6) & (1L << x)) != 0;
+	}
+
+	@Override
+	public void setCell(int x, int y, boolean alive){
+		long word = word(y, x >>> 6);
+		setWord(y, x >>> 6, alive ? word | (1L << x) : word & ~(1L << x));
+	}
+
+	@Override
+	public void toggleCell(int x, int y){
+		setWord(y, x >>> 6, word(y, x >>> 6) ^ (1L << x));
+	}
+
+	private long word(int y, int w){
+		return chunks[(int)(generation & 1)][y / chunkRows].get((y % chunkRows) * wordsPerRow + w);
+	}
+
+	private void setWord(int y, int w, long word){
+		chunks[(int)(generation & 1)][y / chunkRows].put((y % chunkRows) * wordsPerRow + w, word);
+	}
+
+	@Override
+	public Rule getRule(){
+		return rule;
+	}
+
+	/**
+	 * Sets the rule the board is stepped by, and records it in the file's header.
+	 * 
+	 * @param rule New rule
+	 * @throws IllegalArgumentException If the rule has more than two states
+	 */
+	@Override
+	public void setRule(Rule rule){
+		if(rule.getStates() != 2){
+			throw new IllegalArgumentException("A rule with more than two states needs a multi-state board");
+		}
+		this.rule = rule;
+		writeRule();
+	}
+
+	private void writeRule(){
+		//at most B012345678/S012345678, which always fits
+		byte[] ruleText = rule.toString().getBytes(StandardCharsets.US_ASCII);
+		header.put(RULE_OFFSET, (byte)ruleText.length);
+		for(int i = 0; i < ruleText.length; ++i){
+			header.put(RULE_OFFSET + 1 + i, ruleText[i]);
+		}
+	}
+
+	/**
+	 * Mapped boards are kept in a file of their own, and can't be copied.
+	 */
+	@Override
+	public LifeBoard copy(){
+		throw new UnsupportedOperationException("A memory-mapped board can't be copied");
+	}
+
+	/**
+	 * Copies the whole board into a snapshot.  That's on the heap, so only sensible for boards that would fit there.
+	 */
+	@Override
+	public void copyTo(BoardSnapshot snapshot){
+		long[] cells = snapshot.reset(xLength, yLength, generation);
+		LongBuffer[] live = views(generation);
+		for(int y = 0; y < yLength; ++y){
+			readRow(live, y, cells, y * wordsPerRow);
+		}
+	}
+
+	/**
+	 * Copies one row of packed cells out of the board, for writing it to a file.
+	 *
+	 * @param y Row to copy
+	 * @param words Array to copy the row's words into, at least wordsPerRow long
+	 */
+	void copyRowTo(int y, long[] words){
+		readRow(views(generation), y, words, 0);
+	}
+
+	/**
+	 * Forces the board and its generation out to disk, so a later run can pick up from here.
+	 */
+	public void checkpoint(){
+		for(MappedByteBuffer[] buffer : mappings){
+			for(MappedByteBuffer chunk : buffer){
+				chunk.force();
+			}
+		}
+		//header last, so the generation on disk never gets ahead of the cells
+		header.force();
+	}
+
+	/**
+	 * Closes the file.  The board can't be used after this.
+	 */
+	@Override
+	public void close() throws IOException{
+		channel.close();
+	}
+
+	/**
+	 * Sets the pool used to step the board in parallel row bands.
+	 *
+	 * @param pool Pool to step on, or null to step on the calling thread
+	 */
+	public void setThreadPool(ForkJoinPool pool){
+		this.pool = pool;
+	}
+
+	public ForkJoinPool getThreadPool(){
+		return pool;
+	}
+
+	/**
+	 * Sets the number of rows in each band when stepping in parallel.
+	 *
+	 * @param bandHeight Rows per band, at least 1
+	 */
+	public void setBandHeight(int bandHeight){
+		if(bandHeight < 1){
+			throw new IllegalArgumentException("Band height must be at least 1");
+		}
+		this.bandHeight = bandHeight;
+	}
+
+	public int getBandHeight(){
+		return bandHeight;
+	}
+
+	public File getFile(){
+		return file;
+	}
+
+	@Override
+	public long getGeneration(){
+		return generation;
+	}
+
+	@Override
+	public int getXLength(){
+		return xLength;
+	}
+
+	@Override
+	public int getYLength(){
+		return yLength;
+	}
+
+	/**
+	 * The size of a mapped board is fixed by its file, make a new one to change it.
+	 */
+	@Override
+	public void setBoardSize(int xLength, int yLength){
+		throw new UnsupportedOperationException("A mapped board can't be resized");
+	}
+
+	/**
+	 * Only the name of the file is serialized, so reading one back picks the board up from the file.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		bandHeight = DEFAULT_BAND_HEIGHT;
+		open();
+	}
+}
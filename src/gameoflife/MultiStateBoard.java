@@ -0,0 +1,707 @@
+package gameoflife;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Board for rules with more than two states, like Generations rules or Wireworld, with one byte per cell holding
+ * the cell's state.  State 0 is dead and state 1 is alive, so getCell and setCell work the same as on any other
+ * board, and the rule decides what every other state means.
+ *
+ * Cells are stored row-major in a single byte array, and stepped in place instead of into a second buffer, so a
+ * board takes about one byte per cell where the old boolean[][] board took two plus a header for every row.  Each
+ * band of rows keeps copies of its first and last rows from before the step, for the bands on either side of it to
+ * read, and a row's next generation is held back until the row below has been worked out from the old one.
+ *
+ * There are two stepping kernels.  The lane kernel packs the cells in state 1 into bits, 64 to a long like Board
+ * does, and counts neighbours for all 64 at once with the same bit-sliced adder.  Runs of 64 cells with nothing
+ * firing near them and no cells that change on their own are copied through untouched, and only the rest are
+ * looked up in the rule one cell at a time.  The scalar kernel counts every cell's neighbours itself, and is kept
+ * as a fallback; starting the JVM with -Dgameoflife.kernel=scalar picks it instead.
+ *
+ * @author Folz
+ *
+ */
+public class MultiStateBoard implements LifeBoard{
+	private static final long serialVersionUID = 1L;
+
+	private static final int DEFAULT_BAND_HEIGHT = 256;
+	private static final boolean DEFAULT_LANE_KERNEL = !"scalar".equals(System.getProperty("gameoflife.kernel"));
+
+	private int xLength;
+	private int yLength;
+	//state of every cell, indexed [y * xLength + x]
+	private byte[] cells;
+	private long generation = 0;
+	private Rule rule;
+	private transient ForkJoinPool pool;
+	private transient int bandHeight = DEFAULT_BAND_HEIGHT;
+	private transient Band[] bands;
+	//tree of band tasks, built once and reused every generation so stepping in parallel doesn't allocate
+	private transient BandTask bandTasks;
+	private transient boolean laneKernel = DEFAULT_LANE_KERNEL;
+	//1 for every state that changes even with no neighbours firing, for the rule it was worked out for
+	private transient byte[] moving;
+	private transient Rule movingRule;
+
+	/**
+	 * Constructor that defines the size of the board to make, and the rule to step it by.
+	 *
+	 * @param xLength Size in the X direction.
+	 * @param yLength Size in the Y direction.
+	 * @param rule Rule to step by, with any number of states
+	 */
+	public MultiStateBoard(int xLength, int yLength, Rule rule){
+		this.xLength = xLength;
+		this.yLength = yLength;
+		this.rule = rule;
+		cells = new byte[xLength * yLength];
+	}
+
+	/**
+	 * Switches a random selection of cells between dead and alive.  Cells in any state other than dead are killed.
+	 *
+	 * @param percent Strength of the impulse, should be between 0 and 1.
+	 */
+	@Override
+	public void impulse(double percent){
+		impulse(percent, new Random());
+	}
+
+	@Override
+	public void impulse(double percent, Random random){
+		if(percent <= 0){
+			return;
+		}
+		double logMiss = Math.log(1 - percent);
+		for(long i = Board.cellsToSkip(random, logMiss); i < (long)xLength * yLength; i += 1 + Board.cellsToSkip(random, logMiss)){
+			cells[(int)i] = (byte)(cells[(int)i] == 0 ? 1 : 0);
+		}
+	}
+
+	@Override
+	public void setup(){
+		setup(new Random());
+	}
+
+	@Override
+	public void setup(Random random){
+		for(int i = 0; i < xLength * yLength; ++i){
+			cells[i] = (byte)(random.nextDouble() < .2 ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Iterates the generation of the board by one.
+	 */
+	@Override
+	public void refreshBoard(){
+		if(bands == null){
+			makeBands();
+		}
+		//other bands read these while this one is being overwritten, so they're copied before anything is stepped
+		for(Band band : bands){
+			System.arraycopy(cells, band.fromY * xLength, band.firstRow, 0, xLength);
+			System.arraycopy(cells, (band.toY - 1) * xLength, band.lastRow, 0, xLength);
+		}
+		if(laneKernel && movingRule != rule){
+			moving = new byte[256];
+			byte[] transitions = rule.getTransitions();
+			for(int state = 0; state < rule.getStates(); ++state){
+				moving[state] = (byte)((transitions[state * 9] & 0xFF) != state ? 1 : 0);
+			}
+			movingRule = rule;
+		}
+
+		if(pool != null && bands.length > 1){
+			if(bandTasks == null){
+				bandTasks = new BandTask(0, bands.length);
+			}
+			bandTasks.reinitialize();
+			//invoke only returns once every band is done, so it doubles as the barrier between generations
+			pool.invoke(bandTasks);
+		}else{
+			for(int b = 0; b < bands.length; ++b){
+				stepBand(b);
+			}
+		}
+		++generation;
+	}
+
+	/**
+	 * Steps one band of rows in place.  The row above the band and the row below it come from the copies the
+	 * neighbouring bands made, and inside the band each row's result waits in a scratch row until the row under
+	 * it has been stepped, since that still needs the old one.
+	 *
+	 * @param b Index of the band
+	 */
+	private void stepBand(int b){
+		if(laneKernel){
+			stepBandLanes(b);
+			return;
+		}
+		Band band = bands[b];
+		Band up = bands[b == 0 ? bands.length - 1 : b - 1];
+		Band down = bands[b == bands.length - 1 ? 0 : b + 1];
+		byte[] transitions = rule.getTransitions();
+
+		byte[] pending = null;
+		for(int y = band.fromY; y < band.toY; ++y){
+			byte[] above = y == band.fromY ? up.lastRow : cells;
+			int aboveOffset = y == band.fromY ? 0 : (y - 1) * xLength;
+			byte[] below = y == band.toY - 1 ? down.firstRow : cells;
+			int belowOffset = y == band.toY - 1 ? 0 : (y + 1) * xLength;
+			byte[] next = ((y - band.fromY) & 1) == 0 ? band.scratch[0] : band.scratch[1];
+
+			stepRow(above, aboveOffset, cells, y * xLength, below, belowOffset, next, xLength, transitions);
+			if(pending != null){
+				System.arraycopy(pending, 0, cells, (y - 1) * xLength, xLength);
+			}
+			pending = next;
+		}
+		System.arraycopy(pending, 0, cells, (band.toY - 1) * xLength, xLength);
+	}
+
+	/**
+	 * Steps one band of rows in place with the lane kernel.  Works the same way as stepBand, but also keeps the
+	 * packed planes of the three rows around the one being stepped, rolling them down a row at a time so every
+	 * row is only packed once.
+	 *
+	 * @param b Index of the band
+	 */
+	private void stepBandLanes(int b){
+		Band band = bands[b];
+		Band up = bands[b == 0 ? bands.length - 1 : b - 1];
+		Band down = bands[b == bands.length - 1 ? 0 : b + 1];
+		byte[] transitions = rule.getTransitions();
+		long[][] firing = band.firing;
+		long[][] changing = band.changing;
+
+		packRow(up.lastRow, 0, firing[0], changing[0], xLength, moving);
+		packRow(cells, band.fromY * xLength, firing[1], changing[1], xLength, moving);
+		byte[] pending = null;
+		for(int y = band.fromY; y < band.toY; ++y){
+			byte[] below = y == band.toY - 1 ? down.firstRow : cells;
+			int belowOffset = y == band.toY - 1 ? 0 : (y + 1) * xLength;
+			packRow(below, belowOffset, firing[2], changing[2], xLength, moving);
+			byte[] next = ((y - band.fromY) & 1) == 0 ? band.scratch[0] : band.scratch[1];
+
+			stepRowLanes(firing[0], firing[1], firing[2], changing[1], cells, y * xLength, next, xLength, transitions);
+			if(pending != null){
+				System.arraycopy(pending, 0, cells, (y - 1) * xLength, xLength);
+			}
+			pending = next;
+
+			//roll the planes down a row, reusing the top ones for the next row below
+			long[] temp = firing[0];
+			firing[0] = firing[1];
+			firing[1] = firing[2];
+			firing[2] = temp;
+			temp = changing[0];
+			changing[0] = changing[1];
+			changing[1] = changing[2];
+			changing[2] = temp;
+		}
+		System.arraycopy(pending, 0, cells, (band.toY - 1) * xLength, xLength);
+	}
+
+	/**
+	 * Packs a row of states into bit planes, 64 cells to a long.  Bits past the end of the row are left at 0.
+	 *
+	 * @param states Cells of the row
+	 * @param offset Index of the first cell of the row
+	 * @param firing Plane to fill with the cells in state 1
+	 * @param changing Plane to fill with the cells whose state moves on even with nothing firing next to them
+	 * @param xLength Number of cells in a row
+	 * @param moving 1 for each state that moves on by itself, 0 for the rest
+	 */
+	static void packRow(byte[] states, int offset, long[] firing, long[] changing, int xLength, byte[] moving){
+		for(int w = 0, x = 0; x < xLength; ++w){
+			int end = Math.min(x + 64, xLength);
+			long fired = 0;
+			long changed = 0;
+			for(int i = 0; x < end; ++x, ++i){
+				int state = states[offset + x] & 0xFF;
+				fired |= (long)isOne(state) << i;
+				changed |= (long)moving[state] << i;
+			}
+			firing[w] = fired;
+			changing[w] = changed;
+		}
+	}
+
+	/**
+	 * Computes the next generation of one row with the lane kernel, wrapping around at the ends of the row.
+	 *
+	 * Neighbour counts for 64 cells at a time come out of a bit-sliced adder over the firing planes of the three
+	 * rows, as four bit planes.  If none of the 64 has a neighbour firing and none of them moves on by itself, they
+	 * all stay as they are and are copied straight across; otherwise each cell's count is picked out of the planes
+	 * and its next state looked up in the rule.
+	 *
+	 * @param above Firing plane of the row above
+	 * @param middle Firing plane of the row being stepped
+	 * @param below Firing plane of the row below
+	 * @param changing Plane of the cells in the row that move on by themselves
+	 * @param row Cells of the row being stepped
+	 * @param rowOffset Index of the first cell of the row
+	 * @param next Array to write the next generation of the row into, from index 0
+	 * @param xLength Number of cells in a row
+	 * @param transitions Rule's transition table, indexed by [state * 9 + neighbour count]
+	 */
+	static void stepRowLanes(long[] above, long[] middle, long[] below, long[] changing, byte[] row, int rowOffset,
+							 byte[] next, int xLength, byte[] transitions){
+		int words = (xLength + 63) >>> 6;
+		for(int w = 0; w < words; ++w){
+			long n = above[w];
+			long c = middle[w];
+			long s = below[w];
+			long nw = west(above, w, xLength);
+			long ne = east(above, w, words, xLength);
+			long cw = west(middle, w, xLength);
+			long ce = east(middle, w, words, xLength);
+			long sw = west(below, w, xLength);
+			long se = east(below, w, words, xLength);
+
+			//the same adder as Board, top and bottom rows through full adders and the middle through a half adder
+			long top1 = nw ^ n ^ ne;
+			long top2 = (nw & n) | (ne & (nw ^ n));
+			long mid1 = cw ^ ce;
+			long mid2 = cw & ce;
+			long bot1 = sw ^ s ^ se;
+			long bot2 = (sw & s) | (se & (sw ^ s));
+			long ones = top1 ^ mid1 ^ bot1;
+			long onesCarry = (top1 & mid1) | (bot1 & (top1 ^ mid1));
+			long twos = top2 ^ mid2 ^ bot2;
+			long twosCarry = (top2 & mid2) | (bot2 & (top2 ^ mid2));
+			long bit1 = twos ^ onesCarry;
+			long bit2 = twosCarry ^ (twos & onesCarry);
+			long bit3 = twosCarry & twos & onesCarry;
+
+			int x = w << 6;
+			int length = Math.min(64, xLength - x);
+			if((ones | bit1 | bit2 | bit3 | changing[w]) == 0){
+				System.arraycopy(row, rowOffset + x, next, x, length);
+				continue;
+			}
+			for(int i = 0; i < length; ++i){
+				int count = (int)((ones >>> i) & 1) | (int)((bit1 >>> i) & 1) << 1
+						  | (int)((bit2 >>> i) & 1) << 2 | (int)((bit3 >>> i) & 1) << 3;
+				next[x + i] = transitions[(row[rowOffset + x + i] & 0xFF) * 9 + count];
+			}
+		}
+	}
+
+	/**
+	 * Gets a word of a plane shifted so that each bit holds the cell to the left of it, wrapping around the row.
+	 */
+	private static long west(long[] plane, int w, int xLength){
+		long carry;
+		if(w == 0){
+			int x = xLength - 1;
+			carry = plane[x >>> 6] >>> x;
+		}else{
+			carry = plane[w - 1] >>> 63;
+		}
+		return (plane[w] << 1) | (carry & 1L);
+	}
+
+	/**
+	 * Gets a word of a plane shifted so that each bit holds the cell to the right of it, wrapping around the row.
+	 */
+	private static long east(long[] plane, int w, int words, int xLength){
+		long shifted = plane[w] >>> 1;
+		if(w == words - 1){
+			//cell 0 sits just past the last cell of the row
+			return shifted | ((plane[0] & 1L) << (xLength - 1));
+		}
+		return shifted | (plane[w + 1] << 63);
+	}
+
+	/**
+	 * Computes the next generation of one row of cells, wrapping around at the ends of the row.
+	 *
+	 * Each cell's neighbour count is the number of cells in state 1 in the three columns around it, less itself,
+	 * and the column counts slide along the row so every cell is only looked at three times.  The next state is
+	 * then a lookup into the rule's transition table, with no branches for any cell but the first and last.
+	 *
+	 * @param above Cells of the row above
+	 * @param aboveOffset Index of the first cell of the row above
+	 * @param row Cells of the row being stepped
+	 * @param rowOffset Index of the first cell of the row
+	 * @param below Cells of the row below
+	 * @param belowOffset Index of the first cell of the row below
+	 * @param next Array to write the next generation of the row into, from index 0
+	 * @param xLength Number of cells in a row
+	 * @param transitions Rule's transition table, indexed by [state * 9 + neighbour count]
+	 */
+	static void stepRow(byte[] above, int aboveOffset, byte[] row, int rowOffset, byte[] below, int belowOffset,
+						byte[] next, int xLength, byte[] transitions){
+		int last = xLength - 1;
+		int left = column(above, aboveOffset, row, rowOffset, below, belowOffset, last);
+		int middle = column(above, aboveOffset, row, rowOffset, below, belowOffset, 0);
+		int right = column(above, aboveOffset, row, rowOffset, below, belowOffset, xLength > 1 ? 1 : 0);
+		int state = row[rowOffset] & 0xFF;
+		next[0] = transitions[state * 9 + left + middle + right - isOne(state)];
+
+		for(int x = 1; x < last; ++x){
+			left = middle;
+			middle = right;
+			right = isOne(above[aboveOffset + x + 1] & 0xFF) + isOne(row[rowOffset + x + 1] & 0xFF) + isOne(below[belowOffset + x + 1] & 0xFF);
+			state = row[rowOffset + x] & 0xFF;
+			next[x] = transitions[state * 9 + left + middle + right - isOne(state)];
+		}
+
+		if(last > 0){
+			left = middle;
+			middle = right;
+			right = column(above, aboveOffset, row, rowOffset, below, belowOffset, 0);
+			state = row[rowOffset + last] & 0xFF;
+			next[last] = transitions[state * 9 + left + middle + right - isOne(state)];
+		}
+	}
+
+	/**
+	 * Counts the cells in state 1 in one column of three rows.
+	 */
+	private static int column(byte[] above, int aboveOffset, byte[] row, int rowOffset, byte[] below, int belowOffset, int x){
+		return isOne(above[aboveOffset + x] & 0xFF) + isOne(row[rowOffset + x] & 0xFF) + isOne(below[belowOffset + x] & 0xFF);
+	}
+
+	/**
+	 * Gets 1 if a state is 1 and 0 otherwise, without a branch.  State ^ 1 is only 0 for state 1, and only 0 goes
+	 * negative when 1 is taken off.
+	 */
+	private static int isOne(int state){
+		return ((state ^ 1) - 1) >>> 31;
+	}
+
+	/**
+	 * Splits the board into bands of bandHeight rows, each with its own copies of its edge rows and scratch rows.
+	 */
+	private void makeBands(){
+		int count = (yLength + bandHeight - 1) / bandHeight;
+		bands = new Band[count];
+		for(int b = 0; b < count; ++b){
+			bands[b] = new Band(b * bandHeight, Math.min((b + 1) * bandHeight, yLength), xLength);
+		}
+		bandTasks = null;
+	}
+
+	/**
+	 * A band of rows that's stepped on its own.
+	 */
+	private static class Band{
+		final int fromY;
+		final int toY;
+		//the band's first and last rows as they were before the step
+		final byte[] firstRow;
+		final byte[] lastRow;
+		//two rows of results waiting to be written back
+		final byte[][] scratch;
+		//packed planes of the rows above, at and below the one being stepped, for the lane kernel
+		final long[][] firing;
+		final long[][] changing;
+
+		Band(int fromY, int toY, int xLength){
+			this.fromY = fromY;
+			this.toY = toY;
+			firstRow = new byte[xLength];
+			lastRow = new byte[xLength];
+			scratch = new byte[2][xLength];
+			int words = (xLength + 63) >>> 6;
+			firing = new long[3][words];
+			changing = new long[3][words];
+		}
+	}
+
+	/**
+	 * Task that steps a range of bands, splitting itself in half until it's down to one.  Bands only read their
+	 * neighbours' saved edge rows, never their cells, so the result is the same as stepping serially.
+	 *
+	 * The halves are made once, with the task, and reinitialized each time it runs.
+	 */
+	private class BandTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		private final int fromBand;
+		private final int toBand;
+		private final BandTask top;
+		private final BandTask bottom;
+
+		BandTask(int fromBand, int toBand){
+			this.fromBand = fromBand;
+			this.toBand = toBand;
+			if(toBand - fromBand <= 1){
+				top = null;
+				bottom = null;
+			}else{
+				int mid = fromBand + (toBand - fromBand) / 2;
+				top = new BandTask(fromBand, mid);
+				bottom = new BandTask(mid, toBand);
+			}
+		}
+
+		@Override
+		protected void compute(){
+			if(top == null){
+				for(int b = fromBand; b < toBand; ++b){
+					stepBand(b);
+				}
+			}else{
+				top.reinitialize();
+				bottom.reinitialize();
+				invokeAll(top, bottom);
+			}
+		}
+	}
+
+	@Override
+	public void clearBoard(){
+		Arrays.fill(cells, 0, xLength * yLength, (byte)0);
+	}
+
+	/**
+	 * Checks if a cell is alive, in state 1.
+	 */
+	@Override
+	public boolean getCell(int x, int y){
+		return cells[y * xLength + x] == 1;
+	}
+
+	/**
+	 * Sets a cell to state 1 if alive, or state 0 if not.
+	 */
+	@Override
+	public void setCell(int x, int y, boolean alive){
+		cells[y * xLength + x] = (byte)(alive ? 1 : 0);
+	}
+
+	/**
+	 * Moves a cell on to the next state, going back to dead after the last one.
+	 */
+	@Override
+	public void toggleCell(int x, int y){
+		int i = y * xLength + x;
+		cells[i] = (byte)(((cells[i] & 0xFF) + 1) % rule.getStates());
+	}
+
+	/**
+	 * Gets the state of a cell.
+	 *
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @return Returns the state, 0 for dead up to one less than the rule's number of states
+	 */
+	public int getState(int x, int y){
+		return cells[y * xLength + x] & 0xFF;
+	}
+
+	/**
+	 * Sets the state of a cell.
+	 *
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @param state New state of the cell
+	 * @throws IllegalArgumentException If the rule doesn't have that state
+	 */
+	public void setState(int x, int y, int state){
+		if(state < 0 || state >= rule.getStates()){
+			throw new IllegalArgumentException("The rule has no state " + state);
+		}
+		cells[y * xLength + x] = (byte)state;
+	}
+
+	/**
+	 * Copies the states of one row out of the board, for writing it to a file.
+	 *
+	 * @param y Row to copy
+	 * @param states Array to copy the row's states into, at least xLength long
+	 */
+	void copyStatesTo(int y, byte[] states){
+		System.arraycopy(cells, y * xLength, states, 0, xLength);
+	}
+
+	/**
+	 * Replaces the states of one row, for reading it from a file.  The states have to be ones the rule has.
+	 *
+	 * @param y Row to replace
+	 * @param states States of the row
+	 */
+	void copyStatesFrom(int y, byte[] states){
+		System.arraycopy(states, 0, cells, y * xLength, xLength);
+	}
+
+	/**
+	 * Stamps states onto part of a row, for stamping a pattern.  Anything past the right edge is left off, and
+	 * states the rule doesn't have are left dead.
+	 *
+	 * @param x X location of the first state
+	 * @param y Row to stamp onto
+	 * @param states States to stamp
+	 */
+	void stampStates(int x, int y, byte[] states){
+		int stateCount = rule.getStates();
+		for(int i = 0; i < states.length && x + i < xLength; ++i){
+			int state = states[i] & 0xFF;
+			cells[y * xLength + x + i] = (byte)(state < stateCount ? state : 0);
+		}
+	}
+
+	@Override
+	public MultiStateBoard copy(){
+		MultiStateBoard copy = new MultiStateBoard(xLength, yLength, rule);
+		System.arraycopy(cells, 0, copy.cells, 0, xLength * yLength);
+		copy.generation = generation;
+		copy.bandHeight = bandHeight;
+		copy.laneKernel = laneKernel;
+		return copy;
+	}
+
+	@Override
+	public void copyTo(BoardSnapshot snapshot){
+		long[] packed = snapshot.reset(xLength, yLength, generation);
+		byte[] states = snapshot.resetStates(rule.getStates());
+		int wordsPerRow = snapshot.getWordsPerRow();
+		System.arraycopy(cells, 0, states, 0, xLength * yLength);
+		Arrays.fill(packed, 0, yLength * wordsPerRow, 0L);
+		for(int y = 0; y < yLength; ++y){
+			int row = y * xLength;
+			for(int x = 0; x < xLength; ++x){
+				packed[y * wordsPerRow + (x >>> 6)] |= (long)isOne(cells[row + x] & 0xFF) << x;
+			}
+		}
+	}
+
+	/**
+	 * Sets the pool used to step the board in parallel row bands.
+	 *
+	 * @param pool Pool to step on, or null to step on the calling thread
+	 */
+	public void setThreadPool(ForkJoinPool pool){
+		this.pool = pool;
+	}
+
+	public ForkJoinPool getThreadPool(){
+		return pool;
+	}
+
+	/**
+	 * Sets the number of rows in each band.  Every band keeps four rows of its own, so very short bands cost a
+	 * noticeable amount of memory.
+	 *
+	 * @param bandHeight Rows per band, at least 1
+	 */
+	public void setBandHeight(int bandHeight){
+		if(bandHeight < 1){
+			throw new IllegalArgumentException("Band height must be at least 1");
+		}
+		this.bandHeight = bandHeight;
+		bands = null;
+	}
+
+	public int getBandHeight(){
+		return bandHeight;
+	}
+
+	/**
+	 * Picks the kernel the board is stepped with.  Both give the same result.
+	 *
+	 * @param laneKernel True for the lane kernel, false for the scalar one
+	 */
+	public void setLaneKernel(boolean laneKernel){
+		this.laneKernel = laneKernel;
+	}
+
+	public boolean isLaneKernel(){
+		return laneKernel;
+	}
+
+	@Override
+	public Rule getRule(){
+		return rule;
+	}
+
+	/**
+	 * Sets the rule the board is stepped by.  Any rule works, and cells in states the new rule doesn't have are
+	 * killed.
+	 *
+	 * @param rule New rule
+	 */
+	@Override
+	public void setRule(Rule rule){
+		this.rule = rule;
+		int states = rule.getStates();
+		for(int i = 0; i < xLength * yLength; ++i){
+			if((cells[i] & 0xFF) >= states){
+				cells[i] = 0;
+			}
+		}
+	}
+
+	@Override
+	public long getGeneration(){
+		return generation;
+	}
+
+	/**
+	 * Sets the generation count, for when the board's cells come from a file.
+	 *
+	 * @param generation New generation count
+	 */
+	void setGeneration(long generation){
+		this.generation = generation;
+	}
+
+	@Override
+	public int getXLength(){
+		return xLength;
+	}
+
+	@Override
+	public int getYLength(){
+		return yLength;
+	}
+
+	/**
+	 * Changes the size of the board, keeping the cells that are still on it.  Like the dense board, the cells are
+	 * moved along in place unless the board outgrows its array or shrinks to a fraction of it.
+	 */
+	@Override
+	public void setBoardSize(int xLength, int yLength){
+		int oldXLength = this.xLength;
+		int keptRows = Math.min(this.yLength, yLength);
+		int size = xLength * yLength;
+		if(size > cells.length || size < cells.length / 4){
+			byte[] temp = new byte[size + size / 2];
+			int copyCells = Math.min(oldXLength, xLength);
+			for(int y = 0; y < keptRows; ++y){
+				System.arraycopy(cells, y * oldXLength, temp, y * xLength, copyCells);
+			}
+			cells = temp;
+		}else if(xLength <= oldXLength){
+			//narrower rows move from the top down, wider ones from the bottom up, so nothing is written over first
+			for(int y = 0; y < keptRows; ++y){
+				System.arraycopy(cells, y * oldXLength, cells, y * xLength, xLength);
+			}
+			Arrays.fill(cells, keptRows * xLength, size, (byte)0);
+		}else{
+			for(int y = keptRows - 1; y >= 0; --y){
+				System.arraycopy(cells, y * oldXLength, cells, y * xLength, oldXLength);
+				Arrays.fill(cells, y * xLength + oldXLength, (y + 1) * xLength, (byte)0);
+			}
+			Arrays.fill(cells, keptRows * xLength, size, (byte)0);
+		}
+		this.xLength = xLength;
+		this.yLength = yLength;
+		bands = null;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		bandHeight = DEFAULT_BAND_HEIGHT;
+		laneKernel = DEFAULT_LANE_KERNEL;
+	}
+}
@@ -0,0 +1,162 @@
+package gameoflife;
+
+/**
+ * A pattern read from a pattern file, ready to be stamped onto boards.  The cells are kept packed the same way
+ * Board keeps them, so stamping onto a dense board is a few shifts per word instead of a setCell per cell.
+ *
+ * Patterns don't change once they've been read, so one can be stamped any number of times and shared between
+ * boards, which is what lets PatternCache hand the same one out again.
+ *
+ * @author Folz
+ *
+ */
+public final class Pattern {
+	private final String name;
+	private final int width;
+	private final int height;
+	private final Rule rule;
+	private final int wordsPerRow;
+	//cells in state 1, packed like Board's rows
+	private final long[] cells;
+	//states of every cell, only for patterns with states past 1
+	private byte[] states;
+
+	/**
+	 * Constructor for an empty pattern, which the reader then fills in.
+	 *
+	 * @param name Name of the pattern, or null if the file didn't give one
+	 * @param width Width of the pattern in cells
+	 * @param height Height of the pattern in cells
+	 * @param rule Rule the file says the pattern is for, or null if it didn't say
+	 */
+	Pattern(String name, int width, int height, Rule rule){
+		this.name = name;
+		this.width = width;
+		this.height = height;
+		this.rule = rule;
+		wordsPerRow = (width + 63) >>> 6;
+		cells = new long[height * wordsPerRow];
+	}
+
+	/**
+	 * Sets a cell while the pattern is being read.
+	 *
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @param state State of the cell, where only 1 is alive on a board with two states
+	 */
+	void set(int x, int y, int state){
+		if(state == 1){
+			cells[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+		}else{
+			cells[y * wordsPerRow + (x >>> 6)] &= ~(1L << x);
+		}
+		if(states == null && state > 1){
+			//the first cell past state 1, so the states so far are all 0 or 1
+			states = new byte[width * height];
+			for(int i = 0; i < height; ++i){
+				for(int j = 0; j < width; ++j){
+					states[i * width + j] = (byte)(getCell(j, i) ? 1 : 0);
+				}
+			}
+		}
+		if(states != null){
+			states[y * width + x] = (byte)state;
+		}
+	}
+
+	/**
+	 * Stamps the pattern onto a board with its top left corner at the given cell, replacing every cell it covers.
+	 * Whatever hangs off the right or bottom of the board is left off.  Cells in states the board doesn't have are
+	 * left dead.
+	 *
+	 * @param board Board to stamp onto
+	 * @param x X location of the pattern's top left corner
+	 * @param y Y location of the pattern's top left corner
+	 */
+	public void stamp(LifeBoard board, int x, int y){
+		if(x < 0 || y < 0){
+			throw new IllegalArgumentException("Can't stamp a pattern at " + x + ", " + y);
+		}
+		int rows = Math.min(height, board.getYLength() - y);
+		if(board instanceof Board){
+			((Board)board).stamp(cells, wordsPerRow, width, rows, x, y);
+		}else if(board instanceof MultiStateBoard){
+			byte[] row = new byte[width];
+			for(int i = 0; i < rows; ++i){
+				for(int j = 0; j < width; ++j){
+					row[j] = (byte)getState(j, i);
+				}
+				((MultiStateBoard)board).stampStates(x, y + i, row);
+			}
+		}else{
+			int columns = Math.min(width, board.getXLength() - x);
+			for(int i = 0; i < rows; ++i){
+				for(int j = 0; j < columns; ++j){
+					board.setCell(x + j, y + i, getCell(j, i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if a cell of the pattern is alive, in state 1.
+	 *
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @return Returns true if the cell is alive
+	 */
+	public boolean getCell(int x, int y){
+		return (cells[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Gets the state of a cell of the pattern.
+	 *
+	 * @param x X location of the cell
+	 * @param y Y location of the cell
+	 * @return Returns the state of the cell
+	 */
+	public int getState(int x, int y){
+		if(states == null){
+			return getCell(x, y) ? 1 : 0;
+		}
+		return states[y * width + x] & 0xFF;
+	}
+
+	/**
+	 * Gets the number of states the pattern needs, at least 2.
+	 *
+	 * @return Returns one more than the highest state in the pattern
+	 */
+	public int getStateCount(){
+		int highest = 1;
+		if(states != null){
+			for(byte state : states){
+				highest = Math.max(highest, state & 0xFF);
+			}
+		}
+		return highest + 1;
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public int getWidth(){
+		return width;
+	}
+
+	public int getHeight(){
+		return height;
+	}
+
+	/**
+	 * Gets the rule the pattern's file says it's for.
+	 *
+	 * @return Returns the rule, or null if the file didn't say
+	 */
+	public Rule getRule(){
+		return rule;
+	}
+}
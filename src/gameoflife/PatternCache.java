@@ -0,0 +1,108 @@
+package gameoflife;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the patterns read most recently, so stamping the same one over and over only reads it the once.
+ *
+ * Patterns are looked up by a SHA-256 hash of the file, so a file that's been changed is read again and a copy
+ * of one under another name isn't.  Once there are more than the cache holds, the one used longest ago goes.
+ *
+ * @author Folz
+ *
+ */
+public class PatternCache {
+	private static final int DEFAULT_CAPACITY = 32;
+
+	private final int capacity;
+	private final LinkedHashMap<String, Pattern> patterns;
+	private long hits = 0;
+	private long misses = 0;
+
+	public PatternCache(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor that takes how many patterns to keep.
+	 *
+	 * @param capacity Most patterns to keep at once
+	 */
+	public PatternCache(int capacity){
+		if(capacity < 1){
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+		this.capacity = capacity;
+		//access order, so the eldest entry is the one used longest ago
+		patterns = new LinkedHashMap<String, Pattern>(16, .75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest){
+				return size() > PatternCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Gets the pattern in a file, reading it only if it isn't kept already.
+	 *
+	 * @param file File to read
+	 * @return Returns the pattern
+	 */
+	public synchronized Pattern get(File file) throws IOException{
+		byte[] contents = Files.readAllBytes(file.toPath());
+		String key = hash(contents);
+		Pattern pattern = patterns.get(key);
+		if(pattern != null){
+			hits++;
+			return pattern;
+		}
+		misses++;
+		try(BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(contents), StandardCharsets.ISO_8859_1))){
+			pattern = PatternReader.read(in, file.getName());
+		}
+		patterns.put(key, pattern);
+		return pattern;
+	}
+
+	/**
+	 * Works out the SHA-256 hash of a file's contents, as hex.
+	 */
+	private static String hash(byte[] contents){
+		try{
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(contents);
+			return String.format("%064x", new BigInteger(1, digest));
+		}catch(NoSuchAlgorithmException e){
+			//every Java has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public synchronized int size(){
+		return patterns.size();
+	}
+
+	public synchronized long getHits(){
+		return hits;
+	}
+
+	public synchronized long getMisses(){
+		return misses;
+	}
+
+	public synchronized void clear(){
+		patterns.clear();
+	}
+}
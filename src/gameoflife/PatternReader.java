@@ -0,0 +1,297 @@
+package gameoflife;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads patterns from the common pattern file formats, which are told apart by what they start with.
+ *
+ * RLE (.rle) has # comment lines, then a header like "x = 3, y = 3, rule = B3/S23", then runs of cells: a count
+ * (1 if left out) and b for dead, o for alive, $ for the end of a row, and ! for the end of the pattern.  Patterns
+ * with more states use . for dead and A to X for states 1 to 24, with p to y in front for the states after that.
+ *
+ * Plaintext (.cells) has ! comment lines, then a line per row with . for dead and O for alive.
+ *
+ * Life 1.06 (.lif) starts with "#Life 1.06", then has a line with the x and y of each live cell.  The pattern is
+ * moved so its top left live cell ends up at 0, 0.
+ *
+ * Files are read a line at a time, and only the pattern itself is kept.
+ *
+ * @author Folz
+ *
+ */
+public final class PatternReader {
+	//biggest pattern there can be in either direction
+	private static final int MAX_SIZE = 1 << 16;
+	//most cells a pattern can have in all, so a byte of state per cell still fits in an array
+	private static final long MAX_CELLS = 1L << 26;
+	//highest state RLE can write, X after y
+	private static final int MAX_STATE = 255;
+
+	private PatternReader(){
+	}
+
+	/**
+	 * Reads a pattern from a file.
+	 *
+	 * @param file File to read
+	 * @return Returns the pattern
+	 */
+	public static Pattern read(File file) throws IOException{
+		try(BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.ISO_8859_1)){
+			return read(in, file.getName());
+		}
+	}
+
+	/**
+	 * Reads a pattern, working out which format it's in.
+	 *
+	 * @param in Where to read the pattern from
+	 * @param name Name to give the pattern if the file doesn't name it
+	 * @return Returns the pattern
+	 */
+	public static Pattern read(BufferedReader in, String name) throws IOException{
+		String line = in.readLine();
+		while(line != null && line.trim().isEmpty()){
+			line = in.readLine();
+		}
+		if(line == null){
+			throw new IOException("The file is empty");
+		}
+		line = line.trim();
+		if(line.startsWith("#Life 1.06")){
+			return readLife106(in, name);
+		}
+		if(line.startsWith("#Life")){
+			throw new IOException("Only Life 1.06 files can be read, not " + line);
+		}
+		if(line.startsWith("#") || line.startsWith("x")){
+			return readRle(in, line, name);
+		}
+		return readPlaintext(in, line, name);
+	}
+
+	/**
+	 * Reads an RLE pattern, from its first line on.
+	 */
+	private static Pattern readRle(BufferedReader in, String line, String name) throws IOException{
+		for(; line != null && (line.startsWith("#") || line.isEmpty()); line = nextLine(in)){
+			if(line.startsWith("#N")){
+				name = line.substring(2).trim();
+			}
+		}
+		if(line == null){
+			throw new IOException("No RLE header");
+		}
+
+		//x = 3, y = 3, rule = B3/S23
+		int width = -1;
+		int height = -1;
+		Rule rule = null;
+		for(int start = 0, comma; start >= 0; start = comma < 0 ? -1 : comma + 1){
+			comma = line.indexOf(',', start);
+			String field = line.substring(start, comma < 0 ? line.length() : comma);
+			if(field.split("=", 2)[0].trim().equals("rule")){
+				//the rule runs to the end of the line, since a bounded grid like :T20,30 has a comma of its own
+				field = line.substring(start);
+				comma = -1;
+			}
+			String[] pair = field.split("=", 2);
+			if(pair.length != 2){
+				throw new IOException("Bad RLE header: " + line);
+			}
+			String key = pair[0].trim();
+			String value = pair[1].trim();
+			try{
+				if(key.equals("x")){
+					width = Integer.parseInt(value);
+				}else if(key.equals("y")){
+					height = Integer.parseInt(value);
+				}else if(key.equals("rule")){
+					//anything after a colon is the shape of the universe, which boards here don't have a say in
+					int colon = value.indexOf(':');
+					rule = Rule.parse(colon < 0 ? value : value.substring(0, colon));
+				}
+			}catch(IllegalArgumentException e){
+				throw new IOException("Bad RLE header: " + e.getMessage());
+			}
+		}
+		checkSize(width, height);
+
+		Pattern pattern = new Pattern(name, width, height, rule);
+		int x = 0;
+		int y = 0;
+		int count = 0;
+		int prefix = 0;
+		for(line = in.readLine(); line != null; line = in.readLine()){
+			for(int i = 0; i < line.length(); ++i){
+				char c = line.charAt(i);
+				if(c >= '0' && c <= '9'){
+					count = count * 10 + (c - '0');
+					if(count > MAX_SIZE * 2){
+						throw new IOException("Run too long in RLE");
+					}
+					continue;
+				}
+				if(Character.isWhitespace(c)){
+					continue;
+				}
+				if(c == '!'){
+					return pattern;
+				}
+				int run = count == 0 ? 1 : count;
+				count = 0;
+				if(c == '$'){
+					y += run;
+					x = 0;
+					continue;
+				}
+				if(c >= 'p' && c <= 'y'){
+					prefix = c - 'p' + 1;
+					//the count goes with the state the prefix is part of
+					count = run == 1 ? 0 : run;
+					continue;
+				}
+				int state;
+				if(c == 'b' || c == '.'){
+					state = 0;
+				}else if(c == 'o'){
+					state = 1;
+				}else if(c >= 'A' && c <= 'X'){
+					state = prefix * 24 + (c - 'A' + 1);
+				}else{
+					throw new IOException("Unexpected '" + c + "' in RLE");
+				}
+				prefix = 0;
+				if(state > MAX_STATE){
+					throw new IOException("State " + state + " is past the highest there can be");
+				}
+				if(x + run > width || y >= height){
+					throw new IOException("The pattern runs past its own size of " + width + "x" + height);
+				}
+				if(state != 0){
+					for(int j = 0; j < run; ++j){
+						pattern.set(x + j, y, state);
+					}
+				}
+				x += run;
+			}
+		}
+		//plenty of files in the wild are missing the !
+		return pattern;
+	}
+
+	/**
+	 * Reads a plaintext pattern, from its first line on.
+	 */
+	private static Pattern readPlaintext(BufferedReader in, String line, String name) throws IOException{
+		//the width isn't known until the last row, so rows are kept packed until then
+		List<long[]> rows = new ArrayList<>();
+		int width = 0;
+		for(; line != null; line = in.readLine()){
+			if(line.startsWith("!")){
+				if(line.startsWith("!Name:")){
+					name = line.substring(6).trim();
+				}
+				continue;
+			}
+			String cells = line.trim();
+			checkSize(cells.length(), rows.size() + 1);
+			long[] row = new long[(cells.length() + 63) >>> 6];
+			for(int x = 0; x < cells.length(); ++x){
+				char c = cells.charAt(x);
+				if(c == 'O' || c == '*'){
+					row[x >>> 6] |= 1L << x;
+				}else if(c != '.'){
+					throw new IOException("Unexpected '" + c + "' in plaintext pattern");
+				}
+			}
+			rows.add(row);
+			width = Math.max(width, cells.length());
+		}
+		//blank lines at the bottom aren't part of it
+		while(!rows.isEmpty() && rows.get(rows.size() - 1).length == 0){
+			rows.remove(rows.size() - 1);
+		}
+
+		Pattern pattern = new Pattern(name, width, rows.size(), null);
+		for(int y = 0; y < rows.size(); ++y){
+			long[] row = rows.get(y);
+			for(int x = 0; x < row.length * 64; ++x){
+				if((row[x >>> 6] & (1L << x)) != 0){
+					pattern.set(x, y, 1);
+				}
+			}
+		}
+		return pattern;
+	}
+
+	/**
+	 * Reads a Life 1.06 pattern, after its header line.
+	 */
+	private static Pattern readLife106(BufferedReader in, String name) throws IOException{
+		int[] xs = new int[64];
+		int[] ys = new int[64];
+		int count = 0;
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for(String line = in.readLine(); line != null; line = in.readLine()){
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#")){
+				continue;
+			}
+			String[] cell = line.split("\\s+");
+			if(cell.length != 2){
+				throw new IOException("Expected the x and y of a cell, not " + line);
+			}
+			if(count == xs.length){
+				xs = Arrays.copyOf(xs, count * 2);
+				ys = Arrays.copyOf(ys, count * 2);
+			}
+			try{
+				xs[count] = Integer.parseInt(cell[0]);
+				ys[count] = Integer.parseInt(cell[1]);
+			}catch(NumberFormatException e){
+				throw new IOException("Expected the x and y of a cell, not " + line);
+			}
+			minX = Math.min(minX, xs[count]);
+			minY = Math.min(minY, ys[count]);
+			maxX = Math.max(maxX, xs[count]);
+			maxY = Math.max(maxY, ys[count]);
+			count++;
+		}
+		if(count == 0){
+			return new Pattern(name, 0, 0, null);
+		}
+		checkSize((long)maxX - minX + 1, (long)maxY - minY + 1);
+
+		Pattern pattern = new Pattern(name, maxX - minX + 1, maxY - minY + 1, null);
+		for(int i = 0; i < count; ++i){
+			pattern.set(xs[i] - minX, ys[i] - minY, 1);
+		}
+		return pattern;
+	}
+
+	/**
+	 * Reads the next line, trimmed, or null at the end.
+	 */
+	private static String nextLine(BufferedReader in) throws IOException{
+		String line = in.readLine();
+		return line == null ? null : line.trim();
+	}
+
+	/**
+	 * Checks a pattern isn't too big to keep.
+	 */
+	private static void checkSize(long width, long height) throws IOException{
+		if(width < 0 || height < 0 || width > MAX_SIZE || height > MAX_SIZE || width * height > MAX_CELLS){
+			throw new IOException("Bad pattern size " + width + "x" + height);
+		}
+	}
+}
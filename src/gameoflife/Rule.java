@@ -0,0 +1,360 @@
+package gameoflife;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A rule for stepping a board, where a cell's next state depends only on its own state and how many of its eight
+ * neighbours are in state 1 (alive, or firing).
+ *
+ * Life-like rules have two states and are written in B/S notation, e.g. B3/S23 for Conway's Game of Life: born
+ * with 3 neighbours, surviving with 2 or 3.  Generations rules add a number of states with /C, e.g. B2/S/C3 for
+ * Brian's Brain, where a cell that doesn't survive goes through the states above 1 before it's dead again.  Anything
+ * else can be written out as a transition table, Table/states/ then a group of nine next states per state, one for
+ * each neighbour count from 0 to 8, e.g. Wireworld is Table/4/000000000/222222222/333333333/311333333.
+ *
+ * The rule is kept as a table indexed by [state * 9 + neighbour count] for stepping one cell at a time, and two
+ * state rules can be applied to 64 cells at once given their neighbour counts as bit planes.
+ *
+ * @author Folz
+ *
+ */
+public final class Rule implements Serializable{
+	private static final long serialVersionUID = 1L;
+	private static final int MAX_STATES = 256;
+
+	public static final Rule CONWAY = generations(1 << 3, 1 << 2 | 1 << 3, 2);
+
+	//a few well known rules that can be asked for by name
+	private static final String[][] NAMED_RULES = {
+		{"life", "B3/S23"},
+		{"conway", "B3/S23"},
+		{"highlife", "B36/S23"},
+		{"day & night", "B3678/S34678"},
+		{"seeds", "B2/S"},
+		{"life without death", "B3/S012345678"},
+		{"brian's brain", "B2/S/C3"},
+		{"star wars", "B2/S345/C4"},
+		{"wireworld", "Table/4/000000000/222222222/333333333/311333333"},
+	};
+
+	private final int states;
+	//next state of a cell, indexed by [state * 9 + neighbours in state 1]
+	private final byte[] transitions;
+	//for two state rules in apply, all ones for the counts a cell is born or survives with and all zeros otherwise
+	private final long[] birthMasks = new long[9];
+	private final long[] survivalMasks = new long[9];
+
+	private Rule(int states, byte[] transitions){
+		this.states = states;
+		this.transitions = transitions;
+		for(int count = 0; count <= 8; ++count){
+			birthMasks[count] = transitions[count] == 1 ? -1L : 0L;
+			survivalMasks[count] = transitions[9 + count] == 1 ? -1L : 0L;
+		}
+	}
+
+	/**
+	 * Makes a Generations rule, which is a Life-like rule when there are only two states.
+	 *
+	 * @param birth Bit n set if a dead cell with n neighbours is born
+	 * @param survival Bit n set if a live cell with n neighbours survives
+	 * @param states Number of states, at least 2
+	 * @return Returns the rule
+	 */
+	private static Rule generations(int birth, int survival, int states){
+		byte[] transitions = new byte[states * 9];
+		for(int count = 0; count <= 8; ++count){
+			transitions[count] = (byte)((birth >> count) & 1);
+			transitions[9 + count] = (byte)(((survival >> count) & 1) != 0 ? 1 : 2 % states);
+			for(int state = 2; state < states; ++state){
+				transitions[state * 9 + count] = (byte)((state + 1) % states);
+			}
+		}
+		return new Rule(states, transitions);
+	}
+
+	/**
+	 * Parses a rule from B/S notation (B36/S23), the older S/B notation (23/36), either of those with a number of
+	 * states on the end (B2/S/C3 or /2/3), a transition table, or the name of a well known rule.
+	 *
+	 * @param text Rule to parse
+	 * @return Returns the rule
+	 * @throws IllegalArgumentException If the text isn't a rule
+	 */
+	public static Rule parse(String text){
+		String rule = text.trim().toLowerCase(Locale.ROOT);
+		for(String[] named : NAMED_RULES){
+			if(named[0].equals(rule)){
+				rule = named[1].toLowerCase(Locale.ROOT);
+			}
+		}
+		if(rule.startsWith("table/")){
+			return parseTable(rule, text);
+		}
+
+		String[] parts = rule.split("/", -1);
+		String birthPart;
+		String survivalPart;
+		String statesPart = null;
+		if(rule.startsWith("b")){
+			//B3/S23, B3S23, B2/S/C3
+			int s = rule.indexOf('s');
+			if(s < 0){
+				throw new IllegalArgumentException("Not a rule: " + text);
+			}
+			birthPart = rule.substring(1, s).replace("/", "");
+			survivalPart = rule.substring(s + 1);
+			int c = survivalPart.indexOf('/');
+			if(c >= 0){
+				statesPart = survivalPart.substring(c + 1);
+				survivalPart = survivalPart.substring(0, c);
+				if(statesPart.startsWith("c") || statesPart.startsWith("g")){
+					statesPart = statesPart.substring(1);
+				}
+			}
+		}else if(parts.length == 2 || parts.length == 3){
+			//S/B or S/B/C, survival first
+			survivalPart = parts[0];
+			birthPart = parts[1];
+			statesPart = parts.length == 3 ? parts[2] : null;
+		}else{
+			throw new IllegalArgumentException("Not a rule: " + text);
+		}
+
+		int states = 2;
+		if(statesPart != null){
+			try{
+				states = Integer.parseInt(statesPart);
+			}catch(NumberFormatException e){
+				throw new IllegalArgumentException("Not a rule: " + text);
+			}
+			if(states < 2 || states > MAX_STATES){
+				throw new IllegalArgumentException("A rule needs between 2 and " + MAX_STATES + " states: " + text);
+			}
+		}
+		Rule parsed = generations(parseCounts(birthPart, text), parseCounts(survivalPart, text), states);
+		return parsed.equals(CONWAY) ? CONWAY : parsed;
+	}
+
+	private static int parseCounts(String counts, String text){
+		int mask = 0;
+		for(int i = 0; i < counts.length(); ++i){
+			char c = counts.charAt(i);
+			if(c < '0' || c > '8'){
+				throw new IllegalArgumentException("Not a rule: " + text);
+			}
+			mask |= 1 << (c - '0');
+		}
+		return mask;
+	}
+
+	/**
+	 * Parses a transition table, Table/states/ then nine next states for each state.  States above 9 are written
+	 * as letters, a for 10 up to z for 35.
+	 */
+	private static Rule parseTable(String rule, String text){
+		String[] parts = rule.split("/");
+		int states;
+		try{
+			states = Integer.parseInt(parts[1]);
+		}catch(NumberFormatException | ArrayIndexOutOfBoundsException e){
+			throw new IllegalArgumentException("Not a rule: " + text);
+		}
+		if(states < 2 || states > 36 || parts.length != states + 2){
+			throw new IllegalArgumentException("A table needs between 2 and 36 states, and nine next states for each: " + text);
+		}
+		byte[] transitions = new byte[states * 9];
+		for(int state = 0; state < states; ++state){
+			String row = parts[state + 2];
+			if(row.length() != 9){
+				throw new IllegalArgumentException("A table needs nine next states for each state: " + text);
+			}
+			for(int count = 0; count <= 8; ++count){
+				int next = Character.digit(row.charAt(count), 36);
+				if(next < 0 || next >= states){
+					throw new IllegalArgumentException("Not a state: " + row.charAt(count) + " in " + text);
+				}
+				transitions[state * 9 + count] = (byte)next;
+			}
+		}
+		Rule parsed = new Rule(states, transitions);
+		return parsed.equals(CONWAY) ? CONWAY : parsed;
+	}
+
+	/**
+	 * Gets the next state of a single cell of a two state rule.
+	 *
+	 * @param alive Whether the cell is alive now
+	 * @param neighbourCount Number of live neighbours it has, 0 to 8
+	 * @return Returns true if the cell is alive next generation
+	 */
+	public boolean next(boolean alive, int neighbourCount){
+		return transitions[(alive ? 9 : 0) + neighbourCount] == 1;
+	}
+
+	/**
+	 * Gets the next state of a single cell.
+	 *
+	 * @param state State of the cell now
+	 * @param neighbourCount Number of its neighbours in state 1, 0 to 8
+	 * @return Returns the state of the cell next generation
+	 */
+	public int next(int state, int neighbourCount){
+		return transitions[state * 9 + neighbourCount] & 0xFF;
+	}
+
+	/**
+	 * Gets the whole transition table, for stepping many cells.  It mustn't be changed.
+	 *
+	 * @return Returns the next states, indexed by [state * 9 + neighbours in state 1], to be read with & 0xFF
+	 */
+	byte[] getTransitions(){
+		return transitions;
+	}
+
+	/**
+	 * Applies a two state rule to 64 cells at once.  The neighbour count of each cell is given as four bit planes,
+	 * so bit i of the count is bit i of ones, twos, fours and eights.
+	 *
+	 * @param cells The cells as they are now
+	 * @param ones Bit 0 of every cell's neighbour count
+	 * @param twos Bit 1 of every cell's neighbour count
+	 * @param fours Bit 2 of every cell's neighbour count
+	 * @param eights Bit 3 of every cell's neighbour count
+	 * @return Returns the cells as they are next generation
+	 */
+	long apply(long cells, long ones, long twos, long fours, long eights){
+		if(this == CONWAY){
+			//alive next generation on exactly 3, or on exactly 2 if already alive
+			return ~eights & ~fours & twos & (ones | cells);
+		}
+		//which of the four values the low two bits of each count have, then split those on fours, which leaves
+		//count 8 looking like 0 so it gets picked out on eights at the end
+		long p0 = ~twos & ~ones;
+		long p1 = ~twos & ones;
+		long p2 = twos & ~ones;
+		long p3 = twos & ones;
+		long[] b = birthMasks;
+		long[] s = survivalMasks;
+		long bornLow = (p0 & b[0]) | (p1 & b[1]) | (p2 & b[2]) | (p3 & b[3]);
+		long bornHigh = (p0 & b[4]) | (p1 & b[5]) | (p2 & b[6]) | (p3 & b[7]);
+		long keptLow = (p0 & s[0]) | (p1 & s[1]) | (p2 & s[2]) | (p3 & s[3]);
+		long keptHigh = (p0 & s[4]) | (p1 & s[5]) | (p2 & s[6]) | (p3 & s[7]);
+		long born = (bornLow & ~fours) | (bornHigh & fours);
+		long kept = (keptLow & ~fours) | (keptHigh & fours);
+		born = (born & ~eights) | (b[8] & eights);
+		kept = (kept & ~eights) | (s[8] & eights);
+		return (born & ~cells) | (kept & cells);
+	}
+
+	/**
+	 * Gets the number of states a cell can be in.  Boards that only store alive or dead need this to be 2.
+	 *
+	 * @return Returns the number of states
+	 */
+	public int getStates(){
+		return states;
+	}
+
+	/**
+	 * Checks if empty space comes alive under this rule, which boards that only look near live cells can't do.
+	 *
+	 * @return Returns true if dead cells with no live neighbours don't stay dead
+	 */
+	public boolean birthsFromNothing(){
+		return transitions[0] != 0;
+	}
+
+	/**
+	 * Gets the neighbour counts a dead cell comes alive with.
+	 *
+	 * @return Returns the counts, smallest first
+	 */
+	public int[] getBirthCounts(){
+		return counts(0);
+	}
+
+	/**
+	 * Gets the neighbour counts a live cell stays alive with.
+	 *
+	 * @return Returns the counts, smallest first
+	 */
+	public int[] getSurvivalCounts(){
+		return counts(1);
+	}
+
+	private int[] counts(int state){
+		int mask = countMask(state);
+		int[] counts = new int[Integer.bitCount(mask)];
+		int i = 0;
+		for(int count = 0; count <= 8; ++count){
+			if(((mask >> count) & 1) != 0){
+				counts[i++] = count;
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Gets the neighbour counts a cell in the given state goes to state 1 with, as bits.
+	 */
+	private int countMask(int state){
+		int mask = 0;
+		for(int count = 0; count <= 8; ++count){
+			if(transitions[state * 9 + count] == 1){
+				mask |= 1 << count;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Keeps CONWAY a single instance when deserialized, so the fast path still picks it up.
+	 */
+	private Object readResolve(){
+		return equals(CONWAY) ? CONWAY : this;
+	}
+
+	@Override
+	public boolean equals(Object other){
+		return other instanceof Rule && ((Rule)other).states == states && Arrays.equals(((Rule)other).transitions, transitions);
+	}
+
+	@Override
+	public int hashCode(){
+		return Arrays.hashCode(transitions);
+	}
+
+	/**
+	 * Gets the rule in B/S notation, with /C on the end if it has more than two states, or as a transition table
+	 * if it can't be written that way.
+	 */
+	@Override
+	public String toString(){
+		if(generations(countMask(0), countMask(1), states).equals(this)){
+			StringBuilder text = new StringBuilder("B");
+			for(int count : getBirthCounts()){
+				text.append(count);
+			}
+			text.append("/S");
+			for(int count : getSurvivalCounts()){
+				text.append(count);
+			}
+			if(states > 2){
+				text.append("/C").append(states);
+			}
+			return text.toString();
+		}
+
+		StringBuilder text = new StringBuilder("Table/").append(states);
+		for(int state = 0; state < states; ++state){
+			text.append('/');
+			for(int count = 0; count <= 8; ++count){
+				text.append(Character.forDigit(transitions[state * 9 + count], 36));
+			}
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,437 @@
+package gameoflife;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs a board's generations on its own worker thread, separately from drawing it.
+ *
+ * The worker steps as fast as the tick allows (or flat out with a tick of 0) and publishes the newest generation
+ * as a snapshot.  The renderer takes whichever snapshot is newest when it gets around to drawing, so stale frames
+ * are simply skipped.  Snapshots come from a small fixed pool and are recycled, so publishing doesn't allocate.
+ *
+ * Dense boards are also watched for settling into a still life or an oscillator.  Edits and impulses start the
+ * watching over again.
+ *
+ * Small changes like painting cells with the mouse can be queued instead of waiting for the board, and the worker
+ * makes them between generations, so editing doesn't stall while a big board is being stepped.
+ *
+ * A simulation made by a SimulationManager is stepped on the manager's shared threads instead of a thread of its
+ * own, taking turns with the manager's other simulations.
+ *
+ * Given a BoardHistory, every generation of a dense board is kept in it as it's stepped, and the board can be wound
+ * back to any of them.
+ *
+ * @author Folz
+ *
+ */
+public class Simulation {
+	//one being drawn, one waiting to be drawn, one being filled
+	private static final int SNAPSHOT_POOL_SIZE = 3;
+
+	private volatile LifeBoard board;
+	private volatile int tick = 50;
+	private volatile boolean impulsing = false;
+	private volatile int frequency = 100;
+	private volatile double impulseStrength = 0;
+
+	private final ArrayBlockingQueue<BoardSnapshot> freeSnapshots = new ArrayBlockingQueue<>(SNAPSHOT_POOL_SIZE);
+	private final AtomicReference<BoardSnapshot> latestSnapshot = new AtomicReference<>();
+	private BoardSnapshot displayedSnapshot;
+	//changes waiting to be made between generations
+	private final ConcurrentLinkedQueue<Consumer<LifeBoard>> edits = new ConcurrentLinkedQueue<>();
+
+	//the one thread allowed to step, any older one still winding down stops at its next check
+	private volatile Thread worker;
+	//manager whose threads step this, or null to have a thread of its own
+	private final SimulationManager manager;
+	private volatile boolean running = false;
+	private volatile long generationsStepped = 0;
+	private long generations = 0;
+	private final CycleDetector cycles = new CycleDetector();
+	//period and start of the cycle the board is in, for reading off the worker thread
+	private volatile long cyclePeriod = 0;
+	private volatile long cycleSince = 0;
+	//recent generations to wind back to, or null to keep none
+	private volatile BoardHistory history;
+
+	/**
+	 * Constructor that takes the board to run.
+	 *
+	 * @param board Board to run
+	 */
+	public Simulation(LifeBoard board){
+		this(board, null);
+	}
+
+	/**
+	 * Constructor for a simulation stepped by a manager.
+	 *
+	 * @param board Board to run
+	 * @param manager Manager to step it, or null to step it on a thread of its own
+	 */
+	Simulation(LifeBoard board, SimulationManager manager){
+		this.board = board;
+		this.manager = manager;
+		for(int i = 0; i < SNAPSHOT_POOL_SIZE; ++i){
+			freeSnapshots.add(new BoardSnapshot());
+		}
+	}
+
+	/**
+	 * Starts stepping the board on the worker thread.  Does nothing if it's already running.
+	 */
+	public synchronized void start(){
+		if(running){
+			return;
+		}
+		running = true;
+		if(manager != null){
+			manager.schedule(this);
+			return;
+		}
+		worker = new Thread(this::run, "Simulation");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Stops stepping the board, waiting for the generation being stepped to finish, whether it's on the worker
+	 * thread or one of the manager's.
+	 */
+	public synchronized void stop(){
+		if(!running){
+			return;
+		}
+		running = false;
+		Thread old = worker;
+		worker = null;
+		if(old != null){
+			old.interrupt();
+			//a start straight after this can't end up with two threads stepping the same board
+			if(old != Thread.currentThread()){
+				try{
+					old.join();
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+			}
+		}else if(manager != null){
+			//a manager's turn holds the board while it steps, and any turn after this sees it isn't running
+			synchronized(board){
+			}
+		}
+	}
+
+	public boolean isRunning(){
+		return running;
+	}
+
+	/**
+	 * Worker loop, steps a generation, publishes it, then waits out whatever is left of the tick.
+	 */
+	private void run(){
+		try{
+			//checked every generation, since with no time left to wait there's no sleep to interrupt
+			while(running && worker == Thread.currentThread()){
+				long start = System.nanoTime();
+				stepGeneration();
+				if(!waitForTick(start)){
+					return;
+				}
+			}
+		}finally{
+			finish();
+		}
+	}
+
+	/**
+	 * Makes anything queued after the last generation, which would otherwise wait for the next start.  Called
+	 * once the simulation has stopped being stepped.
+	 */
+	void finish(){
+		LifeBoard current = board;
+		synchronized(current){
+			applyEdits(current);
+		}
+	}
+
+	/**
+	 * Takes a manager's turn, stepping one generation unless the simulation was stopped after the turn was taken.
+	 */
+	void stepTurn(){
+		LifeBoard current = board;
+		synchronized(current){
+			if(running){
+				stepGeneration();
+			}
+		}
+	}
+
+	/**
+	 * Steps one generation, applies an impulse if it's time for one, and publishes the result.
+	 */
+	void stepGeneration(){
+		LifeBoard current = board;
+		synchronized(current){
+			applyEdits(current);
+			BoardHistory kept = history;
+			//the generation stepped from, if it was set up or loaded instead of stepped to
+			if(kept != null && current instanceof Board && !kept.contains(current.getGeneration())){
+				kept.record((Board)current);
+			}
+			current.refreshBoard();
+			if(impulsing && generations % frequency == 0){
+				current.impulse(impulseStrength);
+				resetCycles();
+			}else if(current instanceof Board && cycles.observe((Board)current)){
+				cycleSince = cycles.getSinceGeneration();
+				cyclePeriod = cycles.getPeriod();
+			}
+			//and again for anything queued while it was stepping, so it isn't missing from what's drawn next
+			applyEdits(current);
+			if(kept != null && current instanceof Board){
+				kept.record((Board)current);
+			}
+			generations++;
+			publish(current);
+		}
+		generationsStepped++;
+	}
+
+	/**
+	 * Waits out whatever is left of the tick after a generation.
+	 *
+	 * @param start When the generation started, from System.nanoTime
+	 * @return Returns false if interrupted while waiting
+	 */
+	private boolean waitForTick(long start){
+		long wait = tick * 1000000L - (System.nanoTime() - start);
+		if(wait > 0){
+			try{
+				Thread.sleep(wait / 1000000L, (int)(wait % 1000000L));
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Makes a change to the board, waiting for any generation being stepped to finish first, then publishes the
+	 * result so it gets drawn.
+	 *
+	 * @param change Change to make
+	 */
+	public void edit(Consumer<LifeBoard> change){
+		LifeBoard current = board;
+		synchronized(current){
+			applyEdits(current);
+			change.accept(current);
+			resetCycles();
+			publish(current);
+		}
+	}
+
+	/**
+	 * Looks at the board without changing it, waiting for any generation being stepped to finish first.  Nothing
+	 * gets published, and any cycle found is kept.
+	 *
+	 * @param look What to do with the board
+	 */
+	public void inspect(Consumer<LifeBoard> look){
+		LifeBoard current = board;
+		synchronized(current){
+			look.accept(current);
+		}
+	}
+
+	/**
+	 * Queues a change to the board without waiting for the generation being stepped.  The worker makes queued
+	 * changes between generations, or if it isn't running they're made straight away.  Nothing gets published
+	 * for them, so whatever queued them should draw them itself until the next generation comes through.
+	 *
+	 * @param change Change to make, which should cope with the board having been switched or resized meanwhile
+	 */
+	public void queueEdit(Consumer<LifeBoard> change){
+		edits.add(change);
+		//queued before checking, so if the worker has just stopped either it or this makes the change
+		if(!running){
+			LifeBoard current = board;
+			synchronized(current){
+				applyEdits(current);
+			}
+		}
+	}
+
+	/**
+	 * Makes every queued change, in the order they were queued.  Only called with the board locked.
+	 */
+	private void applyEdits(LifeBoard current){
+		boolean changed = false;
+		Consumer<LifeBoard> change;
+		while((change = edits.poll()) != null){
+			change.accept(current);
+			changed = true;
+		}
+		if(changed){
+			resetCycles();
+		}
+	}
+
+	/**
+	 * Forgets any cycle found, after the board was changed.  Only called with the board locked.
+	 */
+	private void resetCycles(){
+		cycles.reset();
+		cyclePeriod = 0;
+		cycleSince = 0;
+	}
+
+	/**
+	 * Publishes the board as it is now, so it gets drawn.
+	 */
+	public void refresh(){
+		edit((current) -> {});
+	}
+
+	/**
+	 * Copies the board into a free snapshot and makes that the newest one.  If every snapshot is in use the
+	 * renderer is behind anyway, so the generation is skipped.
+	 */
+	private void publish(LifeBoard current){
+		BoardSnapshot snapshot = freeSnapshots.poll();
+		if(snapshot == null){
+			return;
+		}
+		current.copyTo(snapshot);
+		BoardSnapshot stale = latestSnapshot.getAndSet(snapshot);
+		if(stale != null){
+			freeSnapshots.offer(stale);
+		}
+	}
+
+	/**
+	 * Takes the newest snapshot for drawing.  It stays valid until the next one is taken, and then goes back to
+	 * the pool.  Should only be called from the one thread doing the drawing.
+	 *
+	 * @return Returns the newest snapshot, or null if nothing new has been published since the last call
+	 */
+	public BoardSnapshot takeLatest(){
+		BoardSnapshot snapshot = latestSnapshot.getAndSet(null);
+		if(snapshot != null){
+			if(displayedSnapshot != null){
+				freeSnapshots.offer(displayedSnapshot);
+			}
+			displayedSnapshot = snapshot;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Gets the number of generations stepped by the worker, for working out generations per second.
+	 *
+	 * @return Returns the number of generations stepped
+	 */
+	public long getGenerationsStepped(){
+		return generationsStepped;
+	}
+
+	/**
+	 * Gets the period of the cycle the board has settled into.
+	 *
+	 * @return Returns the period, 1 for a still life, or 0 if the board isn't known to be in a cycle
+	 */
+	public long getCyclePeriod(){
+		return cyclePeriod;
+	}
+
+	/**
+	 * Gets the generation the board has been in its cycle since.
+	 *
+	 * @return Returns the generation, or 0 if the board isn't known to be in a cycle
+	 */
+	public long getCycleSince(){
+		return cycleSince;
+	}
+
+	public LifeBoard getBoard(){
+		return board;
+	}
+
+	/**
+	 * Switches to running a different board, and publishes it.
+	 *
+	 * @param board New board to run
+	 */
+	public void setBoard(LifeBoard board){
+		this.board = board;
+		if(history != null){
+			history.clear();
+		}
+		refresh();
+	}
+
+	/**
+	 * Winds the board back to a generation kept in its history, and publishes it.  Stepping on from there drops
+	 * the generations after it.
+	 *
+	 * @param generation Generation to go back to
+	 * @return Returns false if the generation isn't kept, or the board isn't a dense one
+	 */
+	public boolean rewind(long generation){
+		LifeBoard current = board;
+		synchronized(current){
+			BoardHistory kept = history;
+			applyEdits(current);
+			if(kept == null || !(current instanceof Board) || !kept.restore((Board)current, generation)){
+				return false;
+			}
+			resetCycles();
+			publish(current);
+			return true;
+		}
+	}
+
+	/**
+	 * Sets the history every generation stepped is kept in.
+	 *
+	 * @param history History to keep generations in, or null to keep none
+	 */
+	public void setHistory(BoardHistory history){
+		this.history = history;
+	}
+
+	public BoardHistory getHistory(){
+		return history;
+	}
+
+	/**
+	 * Sets the minimum time between generations.
+	 *
+	 * @param tick Milliseconds between generations, 0 to step as fast as possible
+	 */
+	public void setTick(int tick){
+		this.tick = tick;
+	}
+
+	public int getTick(){
+		return tick;
+	}
+
+	/**
+	 * Sets up the impulses applied every so many generations.
+	 *
+	 * @param impulsing Whether to apply impulses at all
+	 * @param frequency Number of generations between impulses
+	 * @param impulseStrength Strength of each impulse, between 0 and 1
+	 */
+	public void setImpulse(boolean impulsing, int frequency, double impulseStrength){
+		this.frequency = frequency;
+		this.impulseStrength = impulseStrength;
+		this.impulsing = impulsing;
+	}
+}
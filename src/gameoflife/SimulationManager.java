@@ -0,0 +1,182 @@
+package gameoflife;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs any number of boards on one shared set of threads, instead of a thread per board.
+ *
+ * Every running simulation takes turns, a generation per turn.  Turns are queued up by when they're due, which is
+ * the start of the last turn plus the simulation's tick, so a simulation stepping flat out goes to the back of the
+ * queue behind everything else that's due, and a slow tick just waits its time.  However many boards there are,
+ * each gets its share of the threads and none can starve the rest.
+ *
+ * Copies of boards share their cells until one of them changes (see LifeBoard.copy), so cloning a board to try
+ * out different settings on it is cheap.
+ *
+ * @author Folz
+ *
+ */
+public class SimulationManager {
+	private final List<Simulation> simulations = new CopyOnWriteArrayList<>();
+	private final DelayQueue<Turn> turns = new DelayQueue<>();
+	//simulations with a turn queued or being stepped, so none is ever queued twice
+	private final Set<Simulation> queued = new HashSet<>();
+	private final Thread[] workers;
+	//breaks ties between turns due at the same time, first queued first
+	private final AtomicLong turnCount = new AtomicLong();
+
+	/**
+	 * Constructor that takes the number of threads to step on.
+	 *
+	 * @param threads Number of threads, at least 1
+	 */
+	public SimulationManager(int threads){
+		if(threads < 1){
+			throw new IllegalArgumentException("Threads must be at least 1");
+		}
+		workers = new Thread[threads];
+		for(int i = 0; i < threads; ++i){
+			workers[i] = new Thread(this::work, "Simulation " + (i + 1));
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Starts managing a board.  It isn't stepped until its simulation is started.
+	 *
+	 * @param board Board to run
+	 * @return Returns the simulation running it
+	 */
+	public Simulation add(LifeBoard board){
+		Simulation simulation = new Simulation(board, this);
+		simulations.add(simulation);
+		return simulation;
+	}
+
+	/**
+	 * Starts managing a copy of another simulation's board, as it is right now.  The copy starts off stopped.
+	 *
+	 * @param original Simulation to copy the board of
+	 * @return Returns the simulation running the copy
+	 */
+	public Simulation copy(Simulation original){
+		LifeBoard[] copy = new LifeBoard[1];
+		original.inspect((current) -> copy[0] = current.copy());
+		return add(copy[0]);
+	}
+
+	/**
+	 * Stops a simulation and stops managing it.
+	 *
+	 * @param simulation Simulation to remove
+	 * @return Returns the number of simulations left
+	 */
+	public int remove(Simulation simulation){
+		simulation.stop();
+		simulations.remove(simulation);
+		return simulations.size();
+	}
+
+	/**
+	 * Gets every simulation being managed.
+	 *
+	 * @return Returns the simulations, which can't be changed through the list
+	 */
+	public List<Simulation> getSimulations(){
+		return Collections.unmodifiableList(simulations);
+	}
+
+	/**
+	 * Stops every thread.  Simulations can't be stepped after this.
+	 */
+	public void shutdown(){
+		for(Simulation simulation : simulations){
+			simulation.stop();
+		}
+		for(Thread worker : workers){
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * Queues up a turn for a simulation that has just been started, unless it still has one from before.
+	 */
+	synchronized void schedule(Simulation simulation){
+		if(queued.add(simulation)){
+			turns.add(new Turn(simulation, System.nanoTime()));
+		}
+	}
+
+	/**
+	 * Thread loop, takes whichever turn is due first, steps a generation, and queues up the next turn.
+	 */
+	private void work(){
+		while(true){
+			Turn turn;
+			try{
+				turn = turns.take();
+			}catch(InterruptedException e){
+				return;
+			}
+			Simulation simulation = turn.simulation;
+			if(!simulation.isRunning()){
+				simulation.finish();
+				synchronized(this){
+					queued.remove(simulation);
+					//started again before the turn came round, and start saw it was still queued
+					if(simulation.isRunning()){
+						schedule(simulation);
+					}
+				}
+				continue;
+			}
+			long start = System.nanoTime();
+			try{
+				simulation.stepTurn();
+			}catch(RuntimeException e){
+				//one broken board shouldn't take a thread down with it, it's dropped on its next turn
+				System.out.println("Stopped a simulation: " + e);
+				simulation.stop();
+			}
+			turns.add(new Turn(simulation, start + simulation.getTick() * 1000000L));
+		}
+	}
+
+	/**
+	 * A turn to step one generation of a simulation, due at a certain time.
+	 */
+	private class Turn implements Delayed{
+		private final Simulation simulation;
+		private final long due;
+		private final long order;
+
+		Turn(Simulation simulation, long due){
+			this.simulation = simulation;
+			this.due = due;
+			order = turnCount.getAndIncrement();
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit){
+			return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other){
+			Turn turn = (Turn)other;
+			if(due != turn.due){
+				return due - turn.due < 0 ? -1 : 1;
+			}
+			return Long.compare(order, turn.order);
+		}
+	}
+}
@@ -0,0 +1,306 @@
+package gameoflife;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Board that only stores its live cells, as packed (x, y) keys in an open-addressing hash set.  Memory and the
+ * time to step a generation both scale with the population instead of the size of the board, which makes it
+ * the better choice for very large, mostly empty universes.
+ *
+ * The board can either wrap around at xLength and yLength like Board does, or be unbounded, in which case the
+ * lengths are only the part of the universe that's shown and cells are free to wander off it.
+ *
+ * @author Folz
+ *
+ */
+public class SparseBoard implements LifeBoard{
+	private static final long serialVersionUID = 1L;
+
+	private int xLength;
+	private int yLength;
+	private final boolean wrapped;
+	private LongIntMap liveCells = new LongIntMap();
+	private transient LongIntMap neighbourCounts;
+	private long generation = 0;
+	private Rule rule = Rule.CONWAY;
+
+	/**
+	 * Constructor that defines the size of the board to make.
+	 *
+	 * @param xLength Size in the X direction.
+	 * @param yLength Size in the Y direction.
+	 * @param wrapped True to wrap around at the edges, false for an unbounded universe
+	 */
+	public SparseBoard(int xLength, int yLength, boolean wrapped){
+		this.xLength = xLength;
+		this.yLength = yLength;
+		this.wrapped = wrapped;
+	}
+
+	@Override
+	public void impulse(double percent){
+		impulse(percent, new Random());
+	}
+
+	@Override
+	public void impulse(double percent, Random random){
+		if(percent <= 0){
+			return;
+		}
+		double logMiss = Math.log(1 - percent);
+		for(long i = Board.cellsToSkip(random, logMiss); i < (long)xLength * yLength; i += 1 + Board.cellsToSkip(random, logMiss)){
+			toggleCell((int)(i % xLength), (int)(i / xLength));
+		}
+	}
+
+	@Override
+	public void setup(){
+		setup(new Random());
+	}
+
+	@Override
+	public void setup(Random random){
+		liveCells.clear();
+		for(int y = 0; y < yLength; ++y){
+			for(int x = 0; x < xLength; ++x){
+				if(random.nextDouble() < .2){
+					liveCells.put(key(x, y), 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Iterates the generation of the board by one.  Every live cell adds one to the count of each of its
+	 * neighbours, so only cells next to something alive are ever looked at.
+	 */
+	@Override
+	public void refreshBoard(){
+		if(neighbourCounts == null){
+			neighbourCounts = new LongIntMap(liveCells.size() * 4);
+		}
+		neighbourCounts.clear();
+
+		for(int slot = 0; slot < liveCells.getCapacity(); ++slot){
+			if(liveCells.isUsed(slot)){
+				long cell = liveCells.keyAt(slot);
+				int x = keyX(cell);
+				int y = keyY(cell);
+				for(int dy = -1; dy <= 1; ++dy){
+					for(int dx = -1; dx <= 1; ++dx){
+						if(dx != 0 || dy != 0){
+							neighbourCounts.increment(neighbourKey(x + dx, y + dy));
+						}
+					}
+				}
+			}
+		}
+
+		LongIntMap nextCells = new LongIntMap(liveCells.size());
+		for(int slot = 0; slot < neighbourCounts.getCapacity(); ++slot){
+			if(neighbourCounts.isUsed(slot)){
+				long cell = neighbourCounts.keyAt(slot);
+				if(rule.next(liveCells.get(cell) != 0, neighbourCounts.valueAt(slot))){
+					nextCells.put(cell, 1);
+				}
+			}
+		}
+		if(rule.next(true, 0)){
+			//live cells with no live neighbours never got counted
+			for(int slot = 0; slot < liveCells.getCapacity(); ++slot){
+				if(liveCells.isUsed(slot) && neighbourCounts.get(liveCells.keyAt(slot)) == 0){
+					nextCells.put(liveCells.keyAt(slot), 1);
+				}
+			}
+		}
+		liveCells = nextCells;
+		++generation;
+	}
+
+	@Override
+	public void clearBoard(){
+		liveCells = new LongIntMap();
+	}
+
+	@Override
+	public boolean getCell(int x, int y){
+		return liveCells.get(key(x, y)) != 0;
+	}
+
+	@Override
+	public void setCell(int x, int y, boolean alive){
+		liveCells.put(key(x, y), alive ? 1 : 0);
+	}
+
+	@Override
+	public void toggleCell(int x, int y){
+		long key = key(x, y);
+		if(liveCells.remove(key) == 0){
+			liveCells.put(key, 1);
+		}
+	}
+
+	@Override
+	public SparseBoard copy(){
+		SparseBoard copy = new SparseBoard(xLength, yLength, wrapped);
+		copy.liveCells = new LongIntMap(liveCells.size());
+		for(int slot = 0; slot < liveCells.getCapacity(); ++slot){
+			if(liveCells.isUsed(slot)){
+				copy.liveCells.put(liveCells.keyAt(slot), liveCells.valueAt(slot));
+			}
+		}
+		copy.generation = generation;
+		copy.rule = rule;
+		return copy;
+	}
+
+	@Override
+	public void copyTo(BoardSnapshot snapshot){
+		long[] cells = snapshot.reset(xLength, yLength, generation);
+		int wordsPerRow = snapshot.getWordsPerRow();
+		Arrays.fill(cells, 0, yLength * wordsPerRow, 0L);
+		for(int slot = 0; slot < liveCells.getCapacity(); ++slot){
+			if(liveCells.isUsed(slot)){
+				long cell = liveCells.keyAt(slot);
+				int x = keyX(cell);
+				int y = keyY(cell);
+				if(x >= 0 && y >= 0 && x < xLength && y < yLength){
+					cells[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+	}
+
+	@Override
+	public Rule getRule(){
+		return rule;
+	}
+
+	/**
+	 * Sets the rule the board is stepped by.  Rules where cells are born with no neighbours can't be used, since
+	 * only cells near live ones are ever looked at.
+	 * 
+	 * @param rule New rule
+	 */
+	@Override
+	public void setRule(Rule rule){
+		if(rule.birthsFromNothing()){
+			throw new IllegalArgumentException("A sparse board can't use a rule with B0");
+		}
+		if(rule.getStates() != 2){
+			throw new IllegalArgumentException("A rule with more than two states needs a multi-state board");
+		}
+		this.rule = rule;
+	}
+
+	/**
+	 * Gets the number of live cells, including any outside the shown part of an unbounded board.
+	 *
+	 * @return Returns the population
+	 */
+	public int getPopulation(){
+		return liveCells.size();
+	}
+
+	/**
+	 * Gets the set of live cells, for writing them to a file.  Keys can be unpacked with keyX and keyY, and the
+	 * set mustn't be changed.
+	 * 
+	 * @return Returns the live cells
+	 */
+	LongIntMap getLiveCells(){
+		return liveCells;
+	}
+
+	/**
+	 * Sets the generation count, for when the board's cells come from a file.
+	 * 
+	 * @param generation New generation count
+	 */
+	void setGeneration(long generation){
+		this.generation = generation;
+	}
+
+	public boolean isWrapped(){
+		return wrapped;
+	}
+
+	@Override
+	public long getGeneration(){
+		return generation;
+	}
+
+	@Override
+	public int getXLength(){
+		return xLength;
+	}
+
+	@Override
+	public int getYLength(){
+		return yLength;
+	}
+
+	/**
+	 * Sets the size of the board.  A wrapped board loses any cells outside the new size, an unbounded one just
+	 * shows a different part of the universe.
+	 */
+	@Override
+	public void setBoardSize(int xLength, int yLength){
+		this.xLength = xLength;
+		this.yLength = yLength;
+		if(wrapped){
+			LongIntMap kept = new LongIntMap(liveCells.size());
+			for(int slot = 0; slot < liveCells.getCapacity(); ++slot){
+				if(liveCells.isUsed(slot)){
+					long cell = liveCells.keyAt(slot);
+					if(keyX(cell) < xLength && keyY(cell) < yLength){
+						kept.put(cell, 1);
+					}
+				}
+			}
+			liveCells = kept;
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		//boards saved before there were rules are all Conway
+		if(rule == null){
+			rule = Rule.CONWAY;
+		}
+	}
+
+	/**
+	 * Gets the key of a neighbouring cell, wrapping it around the edges if the board wraps.
+	 */
+	private long neighbourKey(int x, int y){
+		if(wrapped){
+			if(x < 0){
+				x += xLength;
+			}else if(x >= xLength){
+				x -= xLength;
+			}
+			if(y < 0){
+				y += yLength;
+			}else if(y >= yLength){
+				y -= yLength;
+			}
+		}
+		return key(x, y);
+	}
+
+	private static long key(int x, int y){
+		return ((long)x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	static int keyX(long key){
+		return (int)(key >> 32);
+	}
+
+	static int keyY(long key){
+		return (int)key;
+	}
+}